@@ -0,0 +1,135 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.jcas.tcas.Annotation;
+
+/**
+ * Input documents and rule sets shared by all benchmarks. A document name is
+ * either <code>11g1d</code> (the drama bundled with the unit tests),
+ * <code>synthetic-N</code>, a generated TEI drama with N speeches, or
+ * <code>dense-N</code>, a generated TEI text with N tokenized sentences.
+ */
+class BenchmarkDocuments {
+
+	/**
+	 * Selectors that occur in all benchmark documents, used to generate rule
+	 * sets of arbitrary size
+	 */
+	static final String[] SELECTORS = new String[] { "sp", "speaker", "l", "p", "stage", "hi", "div", "head",
+			"sp[who]", "div > sp", "persName", "castItem", "title", "pb", "text", "lg" };
+
+	static byte[] load(String name) throws IOException {
+		if (name.startsWith("synthetic-"))
+			return synthetic(Integer.parseInt(name.substring("synthetic-".length())));
+		if (name.startsWith("dense-"))
+			return dense(Integer.parseInt(name.substring("dense-".length())));
+		try (InputStream is = BenchmarkDocuments.class.getResourceAsStream("/" + name + ".0.xml")) {
+			if (is == null)
+				throw new IOException("Unknown benchmark document: " + name);
+			return IOUtils.toByteArray(is);
+		}
+	}
+
+	/**
+	 * Generates a TEI drama with the given number of speeches. The generator is
+	 * seeded, so the same size always produces the same document.
+	 *
+	 * @param speeches The number of speeches
+	 * @return The document as UTF-8 bytes
+	 */
+	static byte[] synthetic(int speeches) {
+		Random random = new Random(speeches);
+		StringBuilder b = new StringBuilder(speeches * 300);
+		b.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		b.append("<TEI xmlns=\"http://www.tei-c.org/ns/1.0\">");
+		b.append("<teiHeader><fileDesc><titleStmt><title>Synthetic</title></titleStmt></fileDesc></teiHeader>");
+		b.append("<text><front><castList>");
+		for (int i = 0; i < 8; i++)
+			b.append("<castItem><persName xml:id=\"p").append(i).append("\">Person ").append(i)
+					.append("</persName></castItem>");
+		b.append("</castList></front><body>");
+		for (int i = 0; i < speeches; i++) {
+			if (i % 50 == 0) {
+				if (i > 0)
+					b.append("</div>");
+				b.append("<div type=\"scene\"><head>Scene ").append(i / 50).append("</head><pb n=\"").append(i)
+						.append("\"/>");
+			}
+			int who = random.nextInt(8);
+			b.append("<sp who=\"#p").append(who).append("\"><speaker>Person ").append(who).append("</speaker>");
+			if (random.nextInt(4) == 0)
+				b.append("<stage>").append(words(random, 6)).append("</stage>");
+			if (random.nextBoolean()) {
+				b.append("<lg>");
+				for (int l = random.nextInt(4) + 1; l > 0; l--)
+					b.append("<l>").append(words(random, 8)).append("</l>");
+				b.append("</lg>");
+			} else {
+				b.append("<p>").append(words(random, 20)).append(" <hi>").append(words(random, 4))
+						.append("</hi> ").append(words(random, 10)).append("</p>");
+			}
+			b.append("</sp>\n");
+		}
+		if (speeches > 0)
+			b.append("</div>");
+		b.append("</body></text></TEI>");
+		return b.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Generates a tokenized TEI text, in which every word and punctuation mark
+	 * is an element, and most characters are covered by several elements.
+	 *
+	 * @param sentences The number of sentences
+	 * @return The document as UTF-8 bytes
+	 */
+	static byte[] dense(int sentences) {
+		Random random = new Random(sentences);
+		StringBuilder b = new StringBuilder(sentences * 400);
+		b.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		b.append("<TEI xmlns=\"http://www.tei-c.org/ns/1.0\">");
+		b.append("<teiHeader><fileDesc><titleStmt><title>Dense</title></titleStmt></fileDesc></teiHeader>");
+		b.append("<text><body><p>");
+		for (int i = 0; i < sentences; i++) {
+			b.append("<s n=\"").append(i).append("\">");
+			for (int w = random.nextInt(15) + 5; w > 0; w--)
+				b.append("<w>").append(words(random, 1)).append("</w> ");
+			b.append("<pc>.</pc></s>\n");
+			if (i % 20 == 19)
+				b.append("</p><p>");
+		}
+		b.append("</p></body></text></TEI>");
+		return b.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	static String words(Random random, int n) {
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			if (i > 0)
+				b.append(' ');
+			for (int c = random.nextInt(8) + 1; c > 0; c--)
+				b.append((char) ('a' + random.nextInt(26)));
+		}
+		return b.toString();
+	}
+
+	/**
+	 * Creates a reader with the given number of rules. If there are more rules
+	 * than selectors, the selectors are repeated.
+	 *
+	 * @param rules The number of rules
+	 * @return A reader, to be compiled by the benchmark
+	 */
+	static GenericXmlReader<Annotation> reader(int rules) {
+		GenericXmlReader<Annotation> gxr = new GenericXmlReader<Annotation>(Annotation.class);
+		gxr.setTextRootSelector("TEI > text");
+		for (int i = 0; i < rules; i++)
+			gxr.addRule(SELECTORS[i % SELECTORS.length], Annotation.class);
+		return gxr;
+	}
+}
@@ -0,0 +1,85 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.cas.SerialFormat;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.util.CasIOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Restoring the output of the reader from the {@link BinaryCodec}, compared to
+ * reading the XML again and to deserializing XMI.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+	@Param({ "11g1d", "synthetic-1000" })
+	String document;
+
+	byte[] bytes, binary, xmi;
+
+	ReaderProfile<Annotation> profile;
+
+	JCas jcas;
+
+	BinaryCodec codec = new BinaryCodec();
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, UIMAException {
+		bytes = BenchmarkDocuments.load(document);
+		profile = BenchmarkDocuments.reader(BenchmarkDocuments.SELECTORS.length).compile();
+		jcas = profile.read(new ByteArrayInputStream(bytes));
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		codec.write(jcas, Channels.newChannel(os));
+		binary = os.toByteArray();
+		os = new ByteArrayOutputStream();
+		CasIOUtils.save(jcas.getCas(), os, SerialFormat.XMI);
+		xmi = os.toByteArray();
+	}
+
+	@Benchmark
+	public JCas parse(ScratchJCas scratch) throws IOException {
+		return profile.read(scratch.jcas, new ByteArrayInputStream(bytes));
+	}
+
+	@Benchmark
+	public JCas decode(ScratchJCas scratch) throws IOException {
+		return codec.read(scratch.jcas, Channels.newChannel(new ByteArrayInputStream(binary)));
+	}
+
+	@Benchmark
+	public JCas xmi(ScratchJCas scratch) throws IOException {
+		CasIOUtils.load(new ByteArrayInputStream(xmi), scratch.jcas.getCas());
+		return scratch.jcas;
+	}
+
+	@Benchmark
+	public byte[] encode() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream(binary.length);
+		codec.write(jcas, Channels.newChannel(os));
+		return os.toByteArray();
+	}
+}
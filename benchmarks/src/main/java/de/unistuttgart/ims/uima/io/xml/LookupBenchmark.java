@@ -0,0 +1,92 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+
+/**
+ * Finding the sentence (<code>s</code>) and paragraph (<code>p</code>) that
+ * enclose each of 1000 random offsets, with a covering query per offset, or
+ * from a {@link StructuralIndex}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+	@Param({ "dense-10000" })
+	String document;
+
+	JCas jcas;
+
+	StructuralIndex index;
+
+	int[] offsets = new int[1000];
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, UIMAException {
+		byte[] bytes = BenchmarkDocuments.load(document);
+		GenericXmlReader<Annotation> gxr = BenchmarkDocuments.reader(0);
+		// selectors are quadratic in the number of siblings
+		gxr.setXmlElementFeatures(EnumSet.complementOf(EnumSet.of(XmlElementFeature.SELECTOR)));
+		jcas = gxr.read(new ByteArrayInputStream(bytes));
+		index = StructuralIndex.create(jcas);
+		Random random = new Random(1);
+		for (int i = 0; i < offsets.length; i++)
+			offsets[i] = random.nextInt(jcas.getDocumentText().length());
+	}
+
+	@Benchmark
+	public long selectCovering() {
+		long sum = 0;
+		for (int offset : offsets)
+			for (XMLElement element : JCasUtil.selectCovering(jcas, XMLElement.class, offset, offset + 1))
+				if (element.getTag().equals("s") || element.getTag().equals("p"))
+					sum += element.getBegin();
+		return sum;
+	}
+
+	@Benchmark
+	public long structuralIndex() {
+		int s = index.getTagId("s"), p = index.getTagId("p");
+		long sum = 0;
+		for (int offset : offsets) {
+			int i = index.enclosing(offset, s);
+			if (i >= 0)
+				sum += index.begin(i);
+			i = index.enclosing(offset, p);
+			if (i >= 0)
+				sum += index.begin(i);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public StructuralIndex create() {
+		return StructuralIndex.create(jcas);
+	}
+}
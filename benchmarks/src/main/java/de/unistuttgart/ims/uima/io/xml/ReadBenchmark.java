@@ -0,0 +1,82 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The stages of reading a document: parsing with jsoup, traversing the DOM
+ * with the {@link Visitor}, and the full read in DOM and streaming mode.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+
+	@Param({ "11g1d", "synthetic-1000", "synthetic-10000" })
+	String document;
+
+	byte[] bytes;
+
+	Element textRoot;
+
+	ReaderProfile<Annotation> domProfile;
+
+	ReaderProfile<Annotation> streamingProfile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		bytes = BenchmarkDocuments.load(document);
+		GenericXmlReader<Annotation> gxr = BenchmarkDocuments.reader(BenchmarkDocuments.SELECTORS.length);
+		domProfile = gxr.compile();
+		gxr.setStreaming(true);
+		streamingProfile = gxr.compile();
+
+		Document doc = parse();
+		textRoot = doc.select(domProfile.getTextRootSelector()).first();
+	}
+
+	@Benchmark
+	public Document parse() throws IOException {
+		return Jsoup.parse(new ByteArrayInputStream(bytes), "UTF-8", "", Parser.xmlParser());
+	}
+
+	@Benchmark
+	public JCas traverse(ScratchJCas scratch) {
+		Visitor vis = new Visitor(scratch.jcas);
+		textRoot.traverse(vis);
+		return vis.getJCas();
+	}
+
+	@Benchmark
+	public JCas readDom(ScratchJCas scratch) throws IOException {
+		return domProfile.read(scratch.jcas, new ByteArrayInputStream(bytes));
+	}
+
+	@Benchmark
+	public JCas readStreaming(ScratchJCas scratch) throws IOException {
+		return streamingProfile.read(scratch.jcas, new ByteArrayInputStream(bytes));
+	}
+}
@@ -0,0 +1,122 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.Rule;
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+
+/**
+ * Rule application with a growing number of rules. The DOM is parsed once, and
+ * the {@link Visitor} runs before each invocation, so that only matching the
+ * selectors and creating the target annotations is measured. Note that
+ * <code>-prof gc</code> attributes allocations in the per-invocation setup to
+ * the benchmark, use {@link #match()} to compare the allocations of selector
+ * matching alone.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RuleBenchmark {
+
+	@Param({ "11g1d", "synthetic-1000" })
+	String document;
+
+	@Param({ "1", "4", "16", "64" })
+	int rules;
+
+	Document doc;
+
+	Element textRoot;
+
+	ReaderProfile<Annotation> profile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		byte[] bytes = BenchmarkDocuments.load(document);
+		doc = Jsoup.parse(new ByteArrayInputStream(bytes), "UTF-8", "", Parser.xmlParser());
+		profile = BenchmarkDocuments.reader(rules).compile();
+		textRoot = doc.select(profile.getTextRootSelector()).first();
+	}
+
+	@Benchmark
+	public List<List<Element>> match() {
+		return profile.ruleMatcher.match(doc, textRoot);
+	}
+
+	@Benchmark
+	public JCas apply(Traversed traversed) {
+		ReaderProfile<Annotation> profile = traversed.context.getProfile();
+		List<List<Element>> matches = profile.ruleMatcher.match(traversed.doc, traversed.textRoot);
+		for (int i = 0; i < profile.rules.size(); i++) {
+			Rule<?> rule = profile.rules.get(i);
+			for (Element elm : matches.get(i))
+				traversed.context.applyRule(elm, traversed.annotationMap.get(elm), rule, i);
+		}
+		return traversed.context.getJCas();
+	}
+
+	/**
+	 * The text and XML annotations of the document, created before each
+	 * invocation of {@link RuleBenchmark#apply(Traversed)}. JMH may pass a
+	 * different instance of the benchmark to the setup, so the DOM is taken from
+	 * here and not from the benchmark.
+	 */
+	@State(Scope.Thread)
+	public static class Traversed {
+
+		Document doc;
+
+		Element textRoot;
+
+		Map<Element, XMLElement> annotationMap;
+
+		ReaderContext<Annotation> context;
+
+		JCas jcas;
+
+		@Setup(Level.Trial)
+		public void create(RuleBenchmark benchmark) throws UIMAException {
+			jcas = JCasFactory.createJCas();
+			doc = benchmark.doc;
+			textRoot = benchmark.textRoot;
+		}
+
+		@Setup(Level.Invocation)
+		public void traverse(RuleBenchmark benchmark) {
+			jcas.reset();
+			Visitor vis = new Visitor(jcas);
+			textRoot.traverse(vis);
+			vis.getJCas();
+			annotationMap = vis.getAnnotationMap();
+			context = benchmark.profile.newContext(jcas);
+		}
+	}
+}
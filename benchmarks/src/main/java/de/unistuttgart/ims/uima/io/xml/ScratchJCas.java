@@ -0,0 +1,30 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A JCas that is created once per thread, and reset before every invocation,
+ * so that benchmarks measure reading into an empty CAS and not the creation of
+ * the type system.
+ */
+@State(Scope.Thread)
+public class ScratchJCas {
+
+	JCas jcas;
+
+	@Setup(Level.Trial)
+	public void create() throws UIMAException {
+		jcas = JCasFactory.createJCas();
+	}
+
+	@Setup(Level.Invocation)
+	public void reset() {
+		jcas.reset();
+	}
+}
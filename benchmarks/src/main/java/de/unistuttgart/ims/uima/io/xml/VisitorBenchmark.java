@@ -0,0 +1,68 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.jcas.JCas;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The traversal of element-dense documents by the {@link Visitor}, with all
+ * {@link XmlElementFeature}s except the selector (which is quadratic in the
+ * number of siblings), and with the tag name only. Run with
+ * <code>-prof gc</code> to see the allocation per traversal, which is
+ * dominated by the annotations if the features are reduced.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VisitorBenchmark {
+
+	@Param({ "synthetic-10000", "dense-10000" })
+	String document;
+
+	Element textRoot;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Document doc = Jsoup.parse(new ByteArrayInputStream(BenchmarkDocuments.load(document)), "UTF-8", "",
+				Parser.xmlParser());
+		textRoot = doc.select("TEI > text").first();
+	}
+
+	@Benchmark
+	public JCas withoutSelector(ScratchJCas scratch) {
+		Visitor vis = new Visitor(scratch.jcas);
+		vis.setStoreSelectors(false);
+		textRoot.filter(vis.asFilter());
+		return vis.getJCas();
+	}
+
+	@Benchmark
+	public JCas tagOnly(ScratchJCas scratch) {
+		Visitor vis = new Visitor(scratch.jcas);
+		vis.setFeatures(EnumSet.of(XmlElementFeature.TAG));
+		textRoot.filter(vis.asFilter());
+		return vis.getJCas();
+	}
+}
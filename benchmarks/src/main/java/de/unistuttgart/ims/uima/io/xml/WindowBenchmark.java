@@ -0,0 +1,83 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+import de.unistuttgart.ims.uima.io.xml.type.XmlNodeAnnotation;
+
+/**
+ * Exporting every speech (<code>sp</code>) or sentence (<code>s</code>) of a
+ * document as a window of its own, either with a range query per window, or
+ * from a {@link BoundaryIndex} that is created once per document.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WindowBenchmark {
+
+	@Param({ "synthetic-10000", "dense-10000" })
+	String document;
+
+	JCas jcas;
+
+	int[] windows;
+
+	GenericXmlWriter writer = new GenericXmlWriter();
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, UIMAException {
+		byte[] bytes = BenchmarkDocuments.load(document);
+		GenericXmlReader<Annotation> gxr = BenchmarkDocuments.reader(0);
+		// selectors are quadratic in the number of siblings
+		gxr.setXmlElementFeatures(EnumSet.complementOf(EnumSet.of(XmlElementFeature.SELECTOR)));
+		jcas = gxr.read(new ByteArrayInputStream(bytes));
+		windows = JCasUtil.select(jcas, XMLElement.class).stream()
+				.filter(e -> e.getTag().equals("sp") || e.getTag().equals("s"))
+				.flatMapToInt(e -> IntStream.of(e.getBegin(), e.getEnd())).toArray();
+	}
+
+	@Benchmark
+	public StringBuilder rangeQuery() {
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < windows.length; i += 2) {
+			b.setLength(0);
+			writer.write(jcas, b, windows[i], windows[i + 1]);
+		}
+		return b;
+	}
+
+	@Benchmark
+	public StringBuilder boundaryIndex() {
+		BoundaryIndex<XmlNodeAnnotation> index = writer.index(jcas);
+		StringBuilder b = new StringBuilder();
+		for (int i = 0; i < windows.length; i += 2) {
+			b.setLength(0);
+			writer.write(index, b, windows[i], windows[i + 1]);
+		}
+		return b;
+	}
+}
@@ -0,0 +1,111 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Exporting inline XML with the {@link GenericXmlWriter}, and the full round
+ * trip from bytes to JCas to XML. Writing into a channel is measured on one
+ * thread, and in segments on the common fork-join pool.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+
+	@Param({ "11g1d", "synthetic-1000", "synthetic-10000" })
+	String document;
+
+	byte[] bytes;
+
+	ReaderProfile<Annotation> profile;
+
+	JCas jcas;
+
+	GenericXmlWriter writer = new GenericXmlWriter();
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, UIMAException {
+		bytes = BenchmarkDocuments.load(document);
+		profile = BenchmarkDocuments.reader(BenchmarkDocuments.SELECTORS.length).compile();
+		jcas = profile.read(new ByteArrayInputStream(bytes));
+		writer.setSegmentSize(1 << 16);
+	}
+
+	@Benchmark
+	public StringBuilder write() {
+		StringBuilder b = new StringBuilder(bytes.length);
+		writer.write(jcas, b);
+		return b;
+	}
+
+	@Benchmark
+	public long channel() {
+		Discard channel = new Discard();
+		writer.write(jcas, channel, StandardCharsets.UTF_8);
+		return channel.count;
+	}
+
+	@Benchmark
+	public long parallelChannel() {
+		Discard channel = new Discard();
+		writer.write(jcas, channel, StandardCharsets.UTF_8, ForkJoinPool.commonPool());
+		return channel.count;
+	}
+
+	@Benchmark
+	public StringBuilder roundTrip(ScratchJCas scratch) throws IOException {
+		profile.read(scratch.jcas, new ByteArrayInputStream(bytes));
+		StringBuilder b = new StringBuilder(bytes.length);
+		writer.write(scratch.jcas, b);
+		return b;
+	}
+
+	/**
+	 * Counts and discards the bytes written
+	 */
+	static class Discard implements WritableByteChannel {
+		long count = 0;
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public int write(ByteBuffer src) {
+			int n = src.remaining();
+			src.position(src.limit());
+			count += n;
+			return n;
+		}
+	}
+}
@@ -10,8 +10,12 @@ import org.apache.uima.jcas.tcas.Annotation;
  * only on character positions.
  * 
  * @author reiterns
- *
+ * @deprecated The {@link GenericInlineWriter} orders tags with primitive keys
+ *             and does no longer use this comparator. It is not consistent with
+ *             equals, and the order of annotations with equal length depends on
+ *             the insertion order.
  */
+@Deprecated
 public class AnnotationChooser implements Comparator<Annotation> {
 
 	int currentPosition;
@@ -0,0 +1,166 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.uima.UIMAException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+
+/**
+ * Reads many files in parallel with a single {@link ReaderProfile}. Documents
+ * are read into JCas objects from a bounded {@link JCasPool}, and handed to a
+ * consumer on the worker thread. Once the consumer returns, the JCas is reset
+ * and reused. Because at most {@link JCasPool#getSize()} documents are in
+ * flight at any time, the producer of the input paths is blocked if the
+ * consumer is slower than the readers.
+ *
+ * <pre>
+ * BatchReader&lt;DocumentMetaData&gt; batch = new BatchReader&lt;DocumentMetaData&gt;(gxr.compile());
+ * batch.readAll(Files.list(directory), (path, jcas) -&gt; {
+ * 	// process or serialize the JCas, it is reused afterwards
+ * });
+ * </pre>
+ *
+ * @param <D> The document class
+ * @since 2.1.0
+ */
+public class BatchReader<D extends TOP> {
+
+	private static final Logger logger = LogManager.getLogger(BatchReader.class);
+
+	ReaderProfile<D> profile;
+
+	ExecutorService executor = null;
+
+	int threads = Runtime.getRuntime().availableProcessors();
+
+	JCasPool pool = null;
+
+	ParseCache<D> cache = null;
+
+	BiConsumer<Path, Exception> errorHandler = (path, e) -> logger.error("Could not read {}", path, e);
+
+	public BatchReader(ReaderProfile<D> profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * Reads all files and passes the results to the consumer. The consumer is
+	 * called concurrently from several threads, and must not keep a reference to
+	 * the JCas after it returns. This method returns when all files have been
+	 * processed.
+	 *
+	 * @param paths    The files to read
+	 * @param consumer Called for each successfully read file
+	 * @throws InterruptedException If interrupted while waiting for a free JCas
+	 * @throws UIMAException        If the JCas pool can't be created
+	 */
+	public void readAll(Stream<Path> paths, BiConsumer<Path, JCas> consumer)
+			throws InterruptedException, UIMAException {
+		JCasPool jcasPool = (pool == null ? new JCasPool(2 * threads) : pool);
+		ExecutorService exec = (executor == null ? Executors.newFixedThreadPool(threads) : executor);
+		try {
+			Iterator<Path> iterator = paths.iterator();
+			while (iterator.hasNext()) {
+				Path path = iterator.next();
+				JCas jcas = jcasPool.acquire();
+				try {
+					exec.execute(() -> {
+						try {
+							if (cache == null)
+								profile.read(jcas, path);
+							else
+								cache.read(jcas, path);
+							consumer.accept(path, jcas);
+						} catch (Exception e) {
+							errorHandler.accept(path, e);
+						} finally {
+							jcasPool.release(jcas);
+						}
+					});
+				} catch (RuntimeException e) {
+					jcasPool.release(jcas);
+					throw e;
+				}
+			}
+			jcasPool.awaitIdle();
+		} finally {
+			if (executor == null)
+				exec.shutdown();
+		}
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Sets the executor used for reading. If none is set, a fixed thread pool with
+	 * {@link #getThreads()} threads is created for each call of
+	 * {@link #readAll(Stream, BiConsumer)}.
+	 *
+	 * @param executor The executor
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public JCasPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Sets the pool of JCas objects. The size of the pool limits the number of
+	 * documents that are processed at the same time. If none is set, a pool with
+	 * twice as many objects as threads is created.
+	 *
+	 * @param pool The pool
+	 */
+	public void setPool(JCasPool pool) {
+		this.pool = pool;
+	}
+
+	public ParseCache<D> getCache() {
+		return cache;
+	}
+
+	/**
+	 * Sets a cache for the documents. If set, documents are read through the
+	 * cache, with the profile of the cache.
+	 *
+	 * @param cache The cache, or null
+	 * @since 2.1.0
+	 */
+	public void setCache(ParseCache<D> cache) {
+		this.cache = cache;
+	}
+
+	public BiConsumer<Path, Exception> getErrorHandler() {
+		return errorHandler;
+	}
+
+	/**
+	 * Called for each file that could not be read or processed. By default,
+	 * errors are logged.
+	 *
+	 * @param errorHandler The error handler
+	 */
+	public void setErrorHandler(BiConsumer<Path, Exception> errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+}
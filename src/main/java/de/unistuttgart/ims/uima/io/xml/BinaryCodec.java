@@ -0,0 +1,639 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.Feature;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.FeatureDescription;
+import org.apache.uima.resource.metadata.TypeDescription;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.apache.uima.util.CasIOUtils;
+import org.apache.uima.util.TypeSystemUtil;
+
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+import de.unistuttgart.ims.uima.io.xml.type.XMLParsingDescription;
+import de.unistuttgart.ims.uima.io.xml.type.XmlDeclarationAnnotation;
+import de.unistuttgart.ims.uima.io.xml.type.XmlNodeAnnotation;
+
+/**
+ * A compact binary format for the output of the reader. The types of the reader
+ * ({@link XmlNodeAnnotation}, {@link XMLElement},
+ * {@link XmlDeclarationAnnotation} and {@link XMLParsingDescription}) are
+ * encoded by this class: Offsets and document order indices as deltas to the
+ * previous annotation, tags, classes and attribute names as references into a
+ * dictionary, and selectors as the suffix after the prefix they share with the
+ * previous selector, and the result is deflated. The document text and all
+ * other feature structures (e.g., those created by rules) are stored in UIMA's
+ * compressed binary form. Both parts are preceded by a header with their
+ * lengths, such that several CASes can be sent through the same channel.
+ *
+ * <pre>
+ * BinaryCodec codec = new BinaryCodec();
+ * codec.write(jcas, channel);
+ * JCas copy = codec.read(JCasFactory.createJCas(), channel);
+ * </pre>
+ *
+ * Both sides need the same type system, which is checked with a fingerprint.
+ * Only the initial view is supported, and references from other feature
+ * structures to annotations of the reader are not preserved. A codec can be
+ * shared between threads.
+ *
+ * @since 2.1.0
+ */
+public class BinaryCodec {
+
+	/**
+	 * The version of the format
+	 */
+	public static final int VERSION = 1;
+
+	static final byte[] MAGIC = new byte[] { 'G', 'X', 'R', 'B' };
+
+	/**
+	 * Magic, version, type system fingerprint and the lengths of both sections
+	 */
+	static final int HEADER_SIZE = MAGIC.length + 1 + 8 + 4 + 4;
+
+	static final int NODE = 0, ELEMENT = 1, DECLARATION = 2;
+
+	static final int NULL = 0, LITERAL = 1, PARSED = 2;
+
+	/**
+	 * The types that are encoded by this class
+	 */
+	static final Set<String> TYPES = new HashSet<String>(Arrays.asList(XmlNodeAnnotation._TypeName,
+			XMLElement._TypeName, XmlDeclarationAnnotation._TypeName, XMLParsingDescription._TypeName));
+
+	/**
+	 * The type systems without the types of the reader, by the complete type
+	 * system
+	 */
+	final Map<TypeSystem, Filter> filters = Collections.synchronizedMap(new WeakHashMap<TypeSystem, Filter>());
+
+	/**
+	 * Writes the initial view of a JCas.
+	 *
+	 * @param jcas    The JCas
+	 * @param channel The target, which is not closed
+	 * @throws IOException              If the channel errors
+	 * @throws IllegalArgumentException If the JCas contains subtypes of the reader
+	 *                                  types
+	 */
+	public void write(JCas jcas, WritableByteChannel channel) throws IOException {
+		Filter filter = filter(jcas.getTypeSystem());
+		Bytes others = new Bytes();
+		try {
+			Serialization.serializeWithCompression(jcas.getCas(), others, filter.typeSystem);
+		} catch (ResourceInitializationException e) {
+			throw new IOException(e);
+		}
+
+		// the annotations of the reader are deflated
+		Bytes annotations = new Bytes();
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		DeflaterOutputStream deflated = new DeflaterOutputStream(annotations, deflater, 1 << 16);
+		Output out = new Output(Channels.newChannel(deflated));
+
+		Collection<XmlNodeAnnotation> nodes = JCasUtil.select(jcas, XmlNodeAnnotation.class);
+		out.varint(nodes.size());
+		int begin = 0, index = 0;
+		String selector = "";
+		for (XmlNodeAnnotation node : nodes) {
+			int kind = kind(node.getType().getName());
+			out.varint(kind);
+			out.signed(node.getBegin() - begin);
+			out.signed(node.getEnd() - node.getBegin());
+			out.signed(node.getIndex() - index);
+			out.signed(node.getDepth());
+			out.string(node.getOuterHtml());
+			begin = node.getBegin();
+			index = node.getIndex();
+			if (kind == ELEMENT) {
+				XMLElement element = (XMLElement) node;
+				out.name(element.getTag());
+				out.string(element.getId());
+				out.name(element.getCls());
+				out.selector(selector, element.getSelector());
+				if (element.getSelector() != null)
+					selector = element.getSelector();
+				out.attributes(element.getAttributes());
+			}
+		}
+
+		Collection<XMLParsingDescription> descriptions = JCasUtil.select(jcas, XMLParsingDescription.class);
+		out.varint(descriptions.size());
+		for (XMLParsingDescription description : descriptions) {
+			if (!description.getType().getName().equals(XMLParsingDescription._TypeName))
+				throw new IllegalArgumentException("Can't encode type " + description.getType().getName());
+			out.name(description.getEncoding());
+			String[] declarations = (description.getXmlDeclarations() == null ? null
+					: description.getXmlDeclarations().toArray());
+			out.varint(declarations == null ? 0 : declarations.length + 1);
+			if (declarations != null)
+				for (String declaration : declarations)
+					out.string(declaration);
+		}
+		out.flush();
+		deflated.finish();
+		deflater.end();
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.put(MAGIC).put((byte) VERSION).putLong(filter.fingerprint).putInt(others.size())
+				.putInt(annotations.size());
+		header.flip();
+		write(channel, header);
+		write(channel, ByteBuffer.wrap(others.buffer(), 0, others.size()));
+		write(channel, ByteBuffer.wrap(annotations.buffer(), 0, annotations.size()));
+	}
+
+	/**
+	 * Reads a JCas that has been written by {@link #write(JCas, WritableByteChannel)}.
+	 *
+	 * @param jcas    An empty JCas with the same type system as the written one
+	 * @param channel The source, which is not closed
+	 * @return The populated JCas
+	 * @throws IOException If the channel errors, or the input has another format,
+	 *                     version or type system
+	 */
+	public JCas read(JCas jcas, ReadableByteChannel channel) throws IOException {
+		ByteBuffer header = read(channel, HEADER_SIZE);
+		byte[] magic = new byte[MAGIC.length];
+		header.get(magic);
+		if (!Arrays.equals(MAGIC, magic))
+			throw new IOException("Not a binary CAS.");
+		int version = header.get();
+		if (version != VERSION)
+			throw new IOException("Unsupported version " + version + ", expected " + VERSION + ".");
+		Filter filter = filter(jcas.getTypeSystem());
+		if (header.getLong() != filter.fingerprint)
+			throw new IOException("The CAS has been written with a different type system.");
+		ByteBuffer others = read(channel, header.getInt());
+		ByteBuffer annotations = read(channel, header.getInt());
+		CasIOUtils.load(new ByteBufferInputStream(others), jcas.getCas(), filter.typeSystem);
+
+		Inflater inflater = new Inflater();
+		try {
+			Input in = new Input(Channels.newChannel(
+					new InflaterInputStream(new ByteBufferInputStream(annotations), inflater, 1 << 16)));
+			read(jcas, in);
+		} finally {
+			inflater.end();
+		}
+		return jcas;
+	}
+
+	private void read(JCas jcas, Input in) throws IOException {
+		int n = in.varint();
+		int begin = 0, index = 0;
+		String selector = "";
+		for (int i = 0; i < n; i++) {
+			int kind = in.varint();
+			begin += in.signed();
+			int end = begin + in.signed();
+			XmlNodeAnnotation node;
+			if (kind == ELEMENT)
+				node = new XMLElement(jcas, begin, end);
+			else if (kind == DECLARATION)
+				node = new XmlDeclarationAnnotation(jcas, begin, end);
+			else if (kind == NODE)
+				node = new XmlNodeAnnotation(jcas, begin, end);
+			else
+				throw new IOException("Unknown annotation kind " + kind + ".");
+			index += in.signed();
+			node.setIndex(index);
+			node.setDepth(in.signed());
+			node.setOuterHtml(in.string());
+			if (kind == ELEMENT) {
+				XMLElement element = (XMLElement) node;
+				element.setTag(in.name());
+				element.setId(in.string());
+				element.setCls(in.name());
+				element.setSelector(in.selector(selector));
+				if (element.getSelector() != null)
+					selector = element.getSelector();
+				element.setAttributes(in.attributes());
+			}
+			node.addToIndexes();
+		}
+
+		n = in.varint();
+		for (int i = 0; i < n; i++) {
+			XMLParsingDescription description = new XMLParsingDescription(jcas);
+			description.setEncoding(in.name());
+			int length = in.varint();
+			if (length > 0) {
+				List<String> declarations = new ArrayList<String>(length - 1);
+				for (int j = 0; j < length - 1; j++)
+					declarations.add(in.string());
+				description.setXmlDeclarations(ArrayUtil.toStringArray(jcas, declarations));
+			}
+			description.addToIndexes();
+		}
+	}
+
+	private static void write(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/**
+	 * Reads exactly <code>n</code> bytes, such that the channel is positioned
+	 * after the CAS.
+	 */
+	private static ByteBuffer read(ReadableByteChannel channel, int n) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(n);
+		while (buffer.hasRemaining())
+			if (channel.read(buffer) < 0)
+				throw new EOFException();
+		buffer.flip();
+		return buffer;
+	}
+
+	private static int kind(String type) {
+		if (type.equals(XMLElement._TypeName))
+			return ELEMENT;
+		if (type.equals(XmlDeclarationAnnotation._TypeName))
+			return DECLARATION;
+		if (type.equals(XmlNodeAnnotation._TypeName))
+			return NODE;
+		throw new IllegalArgumentException("Can't encode type " + type);
+	}
+
+	/**
+	 * Creates the type system without the types of the reader, their subtypes,
+	 * and the features that refer to them.
+	 */
+	Filter filter(TypeSystem typeSystem) throws IOException {
+		Filter filter = filters.get(typeSystem);
+		if (filter != null)
+			return filter;
+		TypeSystemDescription description = TypeSystemUtil.typeSystem2TypeSystemDescription(typeSystem);
+		Set<String> removed = new HashSet<String>();
+		for (String name : TYPES) {
+			Type type = typeSystem.getType(name);
+			if (type != null)
+				for (Type subtype : typeSystem.getProperlySubsumedTypes(type))
+					removed.add(subtype.getName());
+		}
+		removed.addAll(TYPES);
+		List<TypeDescription> types = new ArrayList<TypeDescription>();
+		for (TypeDescription type : description.getTypes()) {
+			if (removed.contains(type.getName()))
+				continue;
+			List<FeatureDescription> features = new ArrayList<FeatureDescription>();
+			for (FeatureDescription feature : type.getFeatures())
+				if (!removed.contains(feature.getRangeTypeName()) && !removed.contains(feature.getElementType()))
+					features.add(feature);
+			type.setFeatures(features.toArray(new FeatureDescription[features.size()]));
+			types.add(type);
+		}
+		description.setTypes(types.toArray(new TypeDescription[types.size()]));
+		CAS cas;
+		try {
+			cas = CasCreationUtils.createCas(description, null, null);
+		} catch (ResourceInitializationException e) {
+			throw new IOException(e);
+		}
+		filter = new Filter(cas.getTypeSystem());
+		filters.put(typeSystem, filter);
+		return filter;
+	}
+
+	/**
+	 * A type system without the types of the reader, with a fingerprint of its
+	 * types and features
+	 */
+	static class Filter {
+		final TypeSystem typeSystem;
+
+		final long fingerprint;
+
+		Filter(TypeSystem typeSystem) {
+			this.typeSystem = typeSystem;
+			Map<String, String> types = new TreeMap<String, String>();
+			Iterator<Type> iterator = typeSystem.getTypeIterator();
+			while (iterator.hasNext()) {
+				Type type = iterator.next();
+				StringBuilder b = new StringBuilder();
+				b.append(typeSystem.getParent(type) == null ? "" : typeSystem.getParent(type).getName());
+				List<String> features = new ArrayList<String>();
+				for (Feature feature : type.getFeatures())
+					features.add(feature.getShortName() + ":" + feature.getRange().getName());
+				Collections.sort(features);
+				b.append(features);
+				types.put(type.getName(), b.toString());
+			}
+			byte[] hash = ParseCache.sha256().digest(types.toString().getBytes(StandardCharsets.UTF_8));
+			this.fingerprint = ByteBuffer.wrap(hash).getLong();
+		}
+	}
+
+	/**
+	 * A byte array output stream whose content can be used without copying
+	 */
+	static class Bytes extends ByteArrayOutputStream {
+		byte[] buffer() {
+			return buf;
+		}
+	}
+
+	/**
+	 * Writes primitive values into a channel, through a buffer
+	 */
+	static class Output {
+		final WritableByteChannel channel;
+
+		final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+		final Map<String, Integer> names = new HashMap<String, Integer>();
+
+		Output(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		void varint(long value) throws IOException {
+			if (buffer.remaining() < 10)
+				drain();
+			while ((value & ~0x7FL) != 0) {
+				buffer.put((byte) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			buffer.put((byte) value);
+		}
+
+		void signed(int value) throws IOException {
+			varint(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+		}
+
+		void bytes(byte[] bytes, int offset, int length) throws IOException {
+			while (length > 0) {
+				if (!buffer.hasRemaining())
+					drain();
+				int n = Math.min(length, buffer.remaining());
+				buffer.put(bytes, offset, n);
+				offset += n;
+				length -= n;
+			}
+		}
+
+		/**
+		 * A string of UTF-8 bytes, prefixed with its length + 1, or 0 for null
+		 */
+		void string(String s) throws IOException {
+			if (s == null) {
+				varint(0);
+				return;
+			}
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			varint(bytes.length + 1);
+			bytes(bytes, 0, bytes.length);
+		}
+
+		/**
+		 * A string that is likely to occur again: 0 for null, 1 followed by a new
+		 * string, or a reference to a previous one
+		 */
+		void name(String s) throws IOException {
+			if (s == null) {
+				varint(NULL);
+				return;
+			}
+			Integer id = names.get(s);
+			if (id != null)
+				varint(id + 2);
+			else {
+				varint(LITERAL);
+				string(s);
+				names.put(s, names.size());
+			}
+		}
+
+		/**
+		 * The length + 1 of the prefix shared with the previous selector, or 0 for
+		 * null, followed by the rest
+		 */
+		void selector(String previous, String s) throws IOException {
+			if (s == null) {
+				varint(0);
+				return;
+			}
+			int p = 0, max = Math.min(previous.length(), s.length());
+			while (p < max && previous.charAt(p) == s.charAt(p))
+				p++;
+			// don't split surrogate pairs
+			if (p > 0 && p < s.length() && Character.isHighSurrogate(s.charAt(p - 1)))
+				p--;
+			varint(p + 1);
+			string(s.substring(p));
+		}
+
+		/**
+		 * Attributes in the form <code> name="value"</code> are split, such that
+		 * names can be referenced. Other forms are stored as strings.
+		 */
+		void attributes(String s) throws IOException {
+			if (s == null) {
+				varint(NULL);
+				return;
+			}
+			List<String> parts = split(s);
+			if (parts == null) {
+				varint(LITERAL);
+				string(s);
+				return;
+			}
+			varint(PARSED);
+			varint(parts.size() / 2);
+			for (int i = 0; i < parts.size(); i += 2) {
+				name(parts.get(i));
+				string(parts.get(i + 1));
+			}
+		}
+
+		void flush() throws IOException {
+			drain();
+		}
+
+		private void drain() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Splits attributes into names and values.
+	 *
+	 * @return Alternating names and values, or null if the attributes don't
+	 *         have the expected form
+	 */
+	static List<String> split(String attributes) {
+		List<String> parts = new ArrayList<String>();
+		int i = 0, n = attributes.length();
+		while (i < n) {
+			if (attributes.charAt(i) != ' ')
+				return null;
+			int equals = attributes.indexOf("=\"", i + 1);
+			if (equals <= i + 1)
+				return null;
+			int quote = attributes.indexOf('"', equals + 2);
+			if (quote < 0)
+				return null;
+			String name = attributes.substring(i + 1, equals);
+			if (name.indexOf(' ') >= 0 || name.indexOf('"') >= 0)
+				return null;
+			parts.add(name);
+			parts.add(attributes.substring(equals + 2, quote));
+			i = quote + 1;
+		}
+		return parts;
+	}
+
+	/**
+	 * Reads primitive values from a channel, through a buffer
+	 */
+	static class Input {
+		final ReadableByteChannel channel;
+
+		final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+		final List<String> names = new ArrayList<String>();
+
+		Input(ReadableByteChannel channel) {
+			this.channel = channel;
+			buffer.flip();
+		}
+
+		int varint() throws IOException {
+			return (int) varlong();
+		}
+
+		long varlong() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = get();
+				value |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0)
+					return value;
+			}
+			throw new IOException("Malformed number.");
+		}
+
+		int signed() throws IOException {
+			int value = varint();
+			return (value >>> 1) ^ -(value & 1);
+		}
+
+		byte[] bytes(int length) throws IOException {
+			byte[] bytes = new byte[length];
+			int offset = 0;
+			while (offset < length) {
+				if (!buffer.hasRemaining())
+					require(1);
+				int n = Math.min(length - offset, buffer.remaining());
+				buffer.get(bytes, offset, n);
+				offset += n;
+			}
+			return bytes;
+		}
+
+		String string() throws IOException {
+			int length = varint();
+			if (length == 0)
+				return null;
+			length--;
+			if (length <= buffer.capacity()) {
+				require(length);
+				String s = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+				buffer.position(buffer.position() + length);
+				return s;
+			}
+			return new String(bytes(length), StandardCharsets.UTF_8);
+		}
+
+		String name() throws IOException {
+			int code = varint();
+			if (code == NULL)
+				return null;
+			if (code == LITERAL) {
+				String s = string();
+				names.add(s);
+				return s;
+			}
+			if (code - 2 >= names.size())
+				throw new IOException("Unknown name " + code + ".");
+			return names.get(code - 2);
+		}
+
+		String selector(String previous) throws IOException {
+			int prefix = varint();
+			if (prefix == 0)
+				return null;
+			String rest = string();
+			return (prefix == 1 ? rest : previous.substring(0, prefix - 1) + rest);
+		}
+
+		String attributes() throws IOException {
+			int mode = varint();
+			if (mode == NULL)
+				return null;
+			if (mode == LITERAL)
+				return string();
+			int n = varint();
+			StringBuilder b = new StringBuilder();
+			for (int i = 0; i < n; i++)
+				b.append(' ').append(name()).append("=\"").append(string()).append('"');
+			return b.toString();
+		}
+
+		private byte get() throws IOException {
+			if (!buffer.hasRemaining())
+				require(1);
+			return buffer.get();
+		}
+
+		/**
+		 * Reads until at least <code>n</code> bytes are in the buffer.
+		 */
+		private void require(int n) throws IOException {
+			if (buffer.remaining() >= n)
+				return;
+			buffer.compact();
+			while (buffer.position() < n)
+				if (channel.read(buffer) < 0)
+					throw new EOFException();
+			buffer.flip();
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+
+/**
+ * The annotations of a JCas that are written as tags, sorted once in the order
+ * in which they are written, with their begin and end offsets in primitive
+ * arrays. An index is created with {@link GenericInlineWriter#index(JCas)}, and
+ * serves many writes of small windows of the same document, e.g. one per
+ * sentence or paragraph. Finding the annotations of a window takes a binary
+ * search, and a scan over the annotations that begin within the window.
+ *
+ * <pre>
+ * BoundaryIndex&lt;XmlNodeAnnotation&gt; index = writer.index(jcas);
+ * for (Sentence sentence : JCasUtil.select(jcas, Sentence.class))
+ * 	writer.write(index, target, sentence.getBegin(), sentence.getEnd());
+ * </pre>
+ *
+ * The index is a snapshot: Annotations that are added to or removed from the
+ * JCas later are not reflected.
+ *
+ * @param <S> The annotation class of the writer
+ * @since 2.1.0
+ */
+public class BoundaryIndex<S extends Annotation> {
+
+	final JCas jcas;
+
+	final String text;
+
+	/**
+	 * The annotations in document order, or in nesting order if the document
+	 * order is unknown
+	 */
+	final List<S> annotations;
+
+	final int[] begins, ends;
+
+	/**
+	 * Whether the annotations are in document order
+	 */
+	final boolean documentOrder;
+
+	BoundaryIndex(JCas jcas, List<S> annotations, boolean documentOrder) {
+		this.jcas = jcas;
+		this.text = jcas.getDocumentText();
+		this.annotations = annotations;
+		this.documentOrder = documentOrder;
+		int n = annotations.size();
+		this.begins = new int[n];
+		this.ends = new int[n];
+		for (int i = 0; i < n; i++) {
+			begins[i] = annotations.get(i).getBegin();
+			ends[i] = annotations.get(i).getEnd();
+		}
+	}
+
+	/**
+	 * Returns the annotations within a window, in the order of the index.
+	 *
+	 * @param begin The begin of the window
+	 * @param end   The end of the window
+	 * @return A new list of the annotations that begin and end within the window
+	 */
+	List<S> covered(int begin, int end) {
+		List<S> list = new ArrayList<S>();
+		for (int i = first(begin); i < begins.length && begins[i] <= end; i++)
+			if (ends[i] <= end)
+				list.add(annotations.get(i));
+		return list;
+	}
+
+	/**
+	 * Returns the annotations that begin within a window, including those that
+	 * end after it, in the order of the index.
+	 *
+	 * @param begin The begin of the window
+	 * @param end   The end of the window
+	 * @return A view of the annotations
+	 */
+	List<S> beginning(int begin, int end) {
+		int from = first(begin), to = from;
+		while (to < begins.length && begins[to] <= end)
+			to++;
+		return annotations.subList(from, to);
+	}
+
+	/**
+	 * @return The position of the first annotation that begins at or after the
+	 *         offset
+	 */
+	int first(int offset) {
+		int low = 0, high = begins.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (begins[mid] < offset)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	public JCas getJCas() {
+		return jcas;
+	}
+
+	/**
+	 * @return The number of annotations in the index
+	 */
+	public int size() {
+		return annotations.size();
+	}
+
+	/**
+	 * @return True, if the document order of all annotations is known
+	 */
+	public boolean isDocumentOrder() {
+		return documentOrder;
+	}
+}
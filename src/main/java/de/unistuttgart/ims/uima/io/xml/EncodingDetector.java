@@ -0,0 +1,122 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Detects the encoding of an XML document from its first bytes, following
+ * appendix F of the XML specification: A byte order mark takes precedence,
+ * otherwise the <code>encoding</code> pseudo-attribute of the XML declaration
+ * is used. Documents without either are read as UTF-8.
+ *
+ * @since 2.1.0
+ */
+class EncodingDetector {
+
+	private static final Logger logger = LogManager.getLogger(EncodingDetector.class);
+
+	/**
+	 * The number of bytes to look at. An XML declaration is expected to be much
+	 * shorter.
+	 */
+	static final int LIMIT = 1024;
+
+	static final Pattern ENCODING = Pattern.compile("encoding\\s*=\\s*[\"']([A-Za-z][A-Za-z0-9._:-]*)[\"']");
+
+	private static final Charset UTF_32BE = forName("UTF-32BE"), UTF_32LE = forName("UTF-32LE");
+
+	/**
+	 * Detects the encoding of a stream, and skips the byte order mark, if any.
+	 * The stream is otherwise left at its position.
+	 *
+	 * @param stream A stream that supports {@link InputStream#mark(int)}
+	 * @return The detected encoding
+	 * @throws IOException If the stream errors
+	 */
+	static Charset detect(InputStream stream) throws IOException {
+		byte[] head = new byte[LIMIT];
+		stream.mark(LIMIT);
+		int length = 0, n;
+		while (length < LIMIT && (n = stream.read(head, length, LIMIT - length)) > 0)
+			length += n;
+		stream.reset();
+
+		int bom = bomLength(head, length);
+		Charset charset = detect(head, length);
+		for (int i = 0; i < bom; i++)
+			stream.read();
+		return charset;
+	}
+
+	/**
+	 * @param head   The first bytes of the document
+	 * @param length The number of valid bytes in head
+	 * @return The detected encoding
+	 */
+	static Charset detect(byte[] head, int length) {
+		if (startsWith(head, length, 0x00, 0x00, 0xFE, 0xFF) && UTF_32BE != null)
+			return UTF_32BE;
+		if (startsWith(head, length, 0xFF, 0xFE, 0x00, 0x00) && UTF_32LE != null)
+			return UTF_32LE;
+		if (startsWith(head, length, 0xEF, 0xBB, 0xBF))
+			return StandardCharsets.UTF_8;
+		if (startsWith(head, length, 0xFE, 0xFF) || startsWith(head, length, 0x00, 0x3C, 0x00, 0x3F))
+			return StandardCharsets.UTF_16BE;
+		if (startsWith(head, length, 0xFF, 0xFE) || startsWith(head, length, 0x3C, 0x00, 0x3F, 0x00))
+			return StandardCharsets.UTF_16LE;
+
+		// ASCII-compatible: look at the XML declaration
+		if (startsWith(head, length, '<', '?', 'x', 'm', 'l')) {
+			int end = 5;
+			while (end < length - 1 && !(head[end] == '?' && head[end + 1] == '>'))
+				end++;
+			Matcher m = ENCODING.matcher(new String(head, 0, end, StandardCharsets.ISO_8859_1));
+			if (m.find()) {
+				Charset charset = forName(m.group(1));
+				if (charset != null)
+					return charset;
+				logger.warn("Unsupported encoding {}, reading as UTF-8.", m.group(1));
+			}
+		}
+		return StandardCharsets.UTF_8;
+	}
+
+	/**
+	 * @return The length of the byte order mark at the beginning, or 0
+	 */
+	static int bomLength(byte[] head, int length) {
+		if (startsWith(head, length, 0x00, 0x00, 0xFE, 0xFF) || startsWith(head, length, 0xFF, 0xFE, 0x00, 0x00))
+			return 4;
+		if (startsWith(head, length, 0xEF, 0xBB, 0xBF))
+			return 3;
+		if (startsWith(head, length, 0xFE, 0xFF) || startsWith(head, length, 0xFF, 0xFE))
+			return 2;
+		return 0;
+	}
+
+	private static boolean startsWith(byte[] head, int length, int... prefix) {
+		if (length < prefix.length)
+			return false;
+		for (int i = 0; i < prefix.length; i++)
+			if ((head[i] & 0xFF) != prefix[i])
+				return false;
+		return true;
+	}
+
+	private static Charset forName(String name) {
+		try {
+			return Charset.forName(name);
+		} catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+			return null;
+		}
+	}
+}
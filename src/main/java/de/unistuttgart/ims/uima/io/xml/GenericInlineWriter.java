@@ -1,23 +1,51 @@
 package de.unistuttgart.ims.uima.io.xml;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.ToIntFunction;
 
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
 
+import de.unistuttgart.ims.uima.io.xml.type.XmlNodeAnnotation;
+
 public class GenericInlineWriter<S extends Annotation> {
 
+	/**
+	 * The number of characters that are encoded at once
+	 */
+	public static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The default minimal number of characters of a segment
+	 */
+	public static final int SEGMENT_SIZE = 1 << 20;
+
 	Class<S> annotationClass;
 	InlineTagFactory<S> tagFactory;
+	int segmentSize = SEGMENT_SIZE;
 
 	public GenericInlineWriter(Class<S> clz) {
 		annotationClass = clz;
@@ -31,60 +59,592 @@ public class GenericInlineWriter<S extends Annotation> {
 		write(jcas, os, 0, jcas.getDocumentText().length());
 	}
 
+	/**
+	 * Writes the text between <code>begin</code> and <code>end</code> as UTF-8
+	 * into the stream, and closes it.
+	 * 
+	 * @param jcas  The JCas
+	 * @param os    The target
+	 * @param begin The begin of the range
+	 * @param end   The end of the range
+	 * @throws UncheckedIOException If the stream errors
+	 */
 	public void write(JCas jcas, OutputStream os, int begin, int end) {
-		try (OutputStreamWriter fos = new OutputStreamWriter(os)) {
-			write(jcas, fos, begin, end);
+		try (Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
+			write(jcas, writer, begin, end);
 		} catch (IOException e) {
-			e.printStackTrace();
+			throw new UncheckedIOException(e);
 		}
 	}
 
+	/**
+	 * Writes the entire document into a channel.
+	 * 
+	 * @param jcas    The JCas
+	 * @param channel The target, which is not closed
+	 * @param charset The encoding
+	 * @throws UncheckedIOException If the channel errors, or a character can't be
+	 *                              encoded
+	 * @since 2.1.0
+	 */
+	public void write(JCas jcas, WritableByteChannel channel, Charset charset) {
+		write(jcas, channel, charset, 0, jcas.getDocumentText().length());
+	}
+
+	/**
+	 * Writes the text between <code>begin</code> and <code>end</code> into a
+	 * channel. Text and tags are encoded in chunks of {@link #BUFFER_SIZE}, such
+	 * that memory consumption does not depend on the size of the document.
+	 * 
+	 * @param jcas    The JCas
+	 * @param channel The target, which is not closed
+	 * @param charset The encoding
+	 * @param begin   The begin of the range
+	 * @param end     The end of the range
+	 * @throws UncheckedIOException If the channel errors, or a character can't be
+	 *                              encoded
+	 * @since 2.1.0
+	 */
+	public void write(JCas jcas, WritableByteChannel channel, Charset charset, int begin, int end) {
+		Writer writer = Channels.newWriter(channel, charset.newEncoder(), BUFFER_SIZE);
+		write(jcas, writer, begin, end);
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes the text between <code>begin</code> and <code>end</code>, with all
+	 * annotations that are covered by this range as inline tags. All tag
+	 * boundaries are encoded as primitive keys (see {@link #events(List)}), and
+	 * text and tags are appended in a single forward pass. If all annotations
+	 * know their position in the document (see {@link #getIndex(Annotation)}),
+	 * the keys are produced in document order by
+	 * {@link #documentOrder(List, int)}, otherwise they are sorted. If the target
+	 * is a {@link Writer}, text is copied in chunks of {@link #BUFFER_SIZE}
+	 * characters. To write many windows of the same document, use
+	 * {@link #index(JCas)} and
+	 * {@link #write(BoundaryIndex, Appendable, int, int)}.
+	 * 
+	 * @param jcas  The JCas
+	 * @param os    The target
+	 * @param begin The begin of the range
+	 * @param end   The end of the range
+	 * @throws UncheckedIOException If the target errors
+	 */
 	public void write(JCas jcas, Appendable os, int begin, int end) {
-		StringBuilder b = new StringBuilder(jcas.getDocumentText().substring(begin, end));
+		List<S> annotations = new ArrayList<S>(JCasUtil.selectCovered(jcas, annotationClass, begin, end));
+		int covered = annotations.size();
+		// annotations that begin within the range and end after it are not
+		// written, but needed to tell the siblings of their children from their
+		// descendants
+		for (S annotation : JCasUtil.selectCovering(jcas, annotationClass, end, end))
+			if (annotation.getBegin() >= begin && annotation.getEnd() > end)
+				annotations.add(annotation);
+		long[] events = documentOrder(annotations, end);
+		if (events == null) {
+			annotations = nestingOrder(annotations.subList(0, covered));
+			events = events(annotations);
+			Arrays.sort(events);
+		}
+		write(jcas.getDocumentText(), annotations, events, 0, events.length, os, begin, end);
+	}
 
-		Annotation a = new Annotation(jcas);
-		a.setBegin(begin);
-		a.setEnd(end);
-		Collection<? extends S> htmls = JCasUtil.selectCovered(jcas, annotationClass, a);
-		Map<Integer, List<S>> positions = new HashMap<Integer, List<S>>();
+	/**
+	 * Creates an index of all annotations of a JCas, from which windows of the
+	 * document can be written.
+	 * 
+	 * @param jcas The JCas
+	 * @return A new index
+	 * @since 2.1.0
+	 */
+	public BoundaryIndex<S> index(JCas jcas) {
+		List<S> annotations = new ArrayList<S>(jcas.select(annotationClass).asList());
+		boolean ordered = arrange(annotations, this::getIndex);
+		return new BoundaryIndex<S>(jcas, annotations, ordered);
+	}
 
-		for (S h : htmls) {
-			if (!positions.containsKey(h.getBegin() - begin)) {
-				positions.put(h.getBegin() - begin, new LinkedList<S>());
-			}
-			positions.get(h.getBegin() - begin).add(h);
-			if (h.getBegin() - begin != h.getEnd() - begin) {
+	/**
+	 * Writes the text between <code>begin</code> and <code>end</code>, with all
+	 * annotations in the index that are covered by this range as inline tags.
+	 * The output is the same as the output of
+	 * {@link #write(JCas, Appendable, int, int)}, but the annotations of the
+	 * window are taken from the index, in time proportional to the size of the
+	 * window.
+	 * 
+	 * @param index The index of the JCas
+	 * @param os    The target
+	 * @param begin The begin of the range
+	 * @param end   The end of the range
+	 * @throws UncheckedIOException If the target errors
+	 * @since 2.1.0
+	 */
+	public void write(BoundaryIndex<S> index, Appendable os, int begin, int end) {
+		long[] events;
+		List<S> annotations;
+		if (index.isDocumentOrder()) {
+			annotations = index.beginning(begin, end);
+			events = nest(annotations, end);
+		} else {
+			annotations = index.covered(begin, end);
+			events = events(annotations);
+			Arrays.sort(events);
+		}
+		write(index.text, annotations, events, 0, events.length, os, begin, end);
+	}
 
-				if (!positions.containsKey(h.getEnd() - begin)) {
-					positions.put(h.getEnd() - begin, new LinkedList<S>());
+	/**
+	 * Writes the entire document in segments that are produced concurrently, and
+	 * written into the channel in order. The document is split between elements
+	 * on the same level (see {@link #setSegmentSize(int)}), and the output is the
+	 * same as the output of {@link #write(JCas, WritableByteChannel, Charset)}.
+	 * At most twice as many segments as the parallelism of the pool are kept in
+	 * memory at any time. The tag factory needs to be thread-safe.
+	 * 
+	 * @param jcas    The JCas
+	 * @param channel The target, which is not closed
+	 * @param charset The encoding
+	 * @param pool    The pool on which segments are produced
+	 * @throws UncheckedIOException If the channel errors, or a character can't be
+	 *                              encoded
+	 * @since 2.1.0
+	 */
+	public void write(JCas jcas, WritableByteChannel channel, Charset charset, ForkJoinPool pool) {
+		BoundaryIndex<S> index = index(jcas);
+		long[] events = events(index);
+		List<Segment> segments = Segment.split(events, index.text.length(), segmentSize);
+		Deque<ForkJoinTask<ByteBuffer>> pending = new ArrayDeque<ForkJoinTask<ByteBuffer>>();
+		int next = 0;
+		try {
+			while (next < segments.size() || !pending.isEmpty()) {
+				while (next < segments.size() && pending.size() < 2 * pool.getParallelism()) {
+					Segment segment = segments.get(next++);
+					pending.add(pool.submit(() -> encode(index, events, segment, charset)));
 				}
-				positions.get(h.getEnd() - begin).add(h);
+				ByteBuffer bytes = pending.poll().join();
+				while (bytes.hasRemaining())
+					channel.write(bytes);
 			}
-
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			for (ForkJoinTask<ByteBuffer> task : pending)
+				task.cancel(false);
 		}
+	}
 
-		for (int i = b.length() + 10; i >= 0; i--) {
-			final int currentPos = i;
-			if (positions.containsKey(i)) {
-				TreeSet<S> ts = new TreeSet<S>(new AnnotationChooser(currentPos));
-				ts.addAll(positions.get(i));
-				for (S nodeAnno : ts) {
-					if (nodeAnno.getEnd() == nodeAnno.getBegin() && nodeAnno.getBegin() - begin == i)
-						b.insert(i, tagFactory.getEmptyTag(nodeAnno));
-					else if (nodeAnno.getEnd() - begin == i)
-						b.insert(i, tagFactory.getEndTag(nodeAnno));
-					else if (nodeAnno.getBegin() - begin == i)
-						b.insert(i, tagFactory.getBeginTag(nodeAnno));
+	/**
+	 * Writes the entire document in segments into one file per segment,
+	 * concurrently. The files are named with the prefix and the number of the
+	 * segment, e.g. <code>part-00000.xml</code>. Each file is well-formed on its
+	 * own: The elements that enclose a segment (e.g., <code>TEI</code> and
+	 * <code>body</code>) are repeated in every file. The tag factory needs to be
+	 * thread-safe.
+	 * 
+	 * @param jcas      The JCas
+	 * @param directory The directory of the files
+	 * @param prefix    The beginning of the file names
+	 * @param charset   The encoding
+	 * @param pool      The pool on which segments are written
+	 * @return The files in document order
+	 * @throws UncheckedIOException If a file can't be written, or a character
+	 *                              can't be encoded
+	 * @since 2.1.0
+	 */
+	public List<Path> write(JCas jcas, Path directory, String prefix, Charset charset, ForkJoinPool pool) {
+		BoundaryIndex<S> index = index(jcas);
+		long[] events = events(index);
+		List<Segment> segments = Segment.split(events, index.text.length(), segmentSize);
+		List<Path> paths = new ArrayList<Path>(segments.size());
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(segments.size());
+		for (int i = 0; i < segments.size(); i++) {
+			Segment segment = segments.get(i);
+			Path path = directory.resolve(String.format("%s%05d.xml", prefix, i));
+			paths.add(path);
+			tasks.add(pool.submit(() -> {
+				try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+						StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+					Writer writer = Channels.newWriter(channel, charset.newEncoder(), BUFFER_SIZE);
+					write(index, events, segment, writer, true);
+					writer.flush();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
 				}
-			}
+			}));
 		}
+		for (ForkJoinTask<?> task : tasks)
+			task.join();
+		return paths;
+	}
+
+	/**
+	 * @return The keys of all annotations in the index, in the order in which
+	 *         they are written
+	 */
+	long[] events(BoundaryIndex<S> index) {
+		if (index.isDocumentOrder())
+			return nest(index.annotations, Integer.MAX_VALUE);
+		long[] events = events(index.annotations);
+		Arrays.sort(events);
+		return events;
+	}
 
+	private ByteBuffer encode(BoundaryIndex<S> index, long[] events, Segment segment, Charset charset)
+			throws IOException {
+		Bytes bytes = new Bytes(segment.end - segment.begin + 16 * (segment.to - segment.from));
+		Writer writer = Channels.newWriter(Channels.newChannel(bytes), charset.newEncoder(), BUFFER_SIZE);
+		write(index, events, segment, writer, false);
+		writer.flush();
+		return bytes.toByteBuffer();
+	}
+
+	/**
+	 * Writes a segment, optionally enclosed in the tags of the elements that are
+	 * open at its begin and end.
+	 */
+	private void write(BoundaryIndex<S> index, long[] events, Segment segment, Writer writer, boolean enclose)
+			throws IOException {
+		List<S> annotations = index.annotations;
+		if (enclose)
+			for (int position : segment.open)
+				tagFactory.appendBeginTag(annotations.get(position), writer);
+		write(index.text, annotations, events, segment.from, segment.to, writer, segment.begin, segment.end);
+		if (enclose)
+			for (int i = segment.close.length - 1; i >= 0; i--)
+				tagFactory.appendEndTag(annotations.get(segment.close[i]), writer);
+	}
+
+	/**
+	 * A byte array output stream whose content can be wrapped without copying
+	 */
+	private static class Bytes extends ByteArrayOutputStream {
+		Bytes(int size) {
+			super(size);
+		}
+
+		ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+
+	private void write(String text, List<S> annotations, long[] events, int from, int to, Appendable os,
+			int begin, int end) {
+		int n = annotations.size();
+		char[] buffer = (os instanceof Writer ? new char[BUFFER_SIZE] : null);
 		try {
-			os.append(b.toString());
+			int position = begin;
+			for (int e = from; e < to; e++) {
+				long event = events[e];
+				int offset = offset(event);
+				if (offset > position) {
+					appendText(os, text, position, offset, buffer);
+					position = offset;
+				}
+				int ordinal = ordinal(event);
+				if (isEmpty(event))
+					tagFactory.appendEmptyTag(annotations.get(ordinal), os);
+				else if (isBegin(event))
+					tagFactory.appendBeginTag(annotations.get(ordinal), os);
+				else
+					tagFactory.appendEndTag(annotations.get(n - 1 - ordinal), os);
+			}
+			if (end > position)
+				appendText(os, text, position, end, buffer);
 		} catch (IOException e) {
-			e.printStackTrace();
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Returns the position of an annotation in document order, as recorded by
+	 * the reader. By default, this is the feature <code>Index</code> of
+	 * {@link XmlNodeAnnotation}s.
+	 * 
+	 * @param annotation The annotation
+	 * @return The 1-based position, or 0 if it's unknown
+	 * @since 2.1.0
+	 */
+	protected int getIndex(S annotation) {
+		if (annotation instanceof XmlNodeAnnotation)
+			return ((XmlNodeAnnotation) annotation).getIndex();
+		return 0;
+	}
+
+	/**
+	 * Returns the number of annotated elements that contain an annotation. Only
+	 * called if {@link #getIndex(Annotation)} is known.
+	 * 
+	 * @param annotation The annotation
+	 * @return The depth
+	 * @since 2.1.0
+	 */
+	protected int getDepth(S annotation) {
+		if (annotation instanceof XmlNodeAnnotation)
+			return ((XmlNodeAnnotation) annotation).getDepth();
+		return 0;
+	}
+
+	/**
+	 * Creates the keys for all annotations in the order in which they are
+	 * written, if the position of all annotations in the document is known. The
+	 * list is rearranged into document order (which differs from index order only
+	 * for elements with identical begin, and is therefore cheap to restore), and
+	 * the nesting is reconstructed from the depths with a stack of open elements.
+	 * Annotations without content are written as empty tags, unless they contain
+	 * other annotations.
+	 * 
+	 * @param annotations The annotations in index order, rearranged in place
+	 * @param limit       Annotations that end after this offset are not written
+	 *                    (see {@link #nest(List, int)})
+	 * @return The keys, or null if the document order is unknown
+	 */
+	long[] documentOrder(List<S> annotations, int limit) {
+		if (!sortByIndex(annotations, this::getIndex))
+			return null;
+		return nest(annotations, limit);
+	}
+
+	/**
+	 * Arranges all annotations of a JCas for an index: In document order if it
+	 * is known and usable (see {@link #sortByIndex(List, ToIntFunction)}),
+	 * otherwise in nesting order.
+	 * 
+	 * @param annotations The annotations in index order, rearranged in place
+	 * @param index       The 1-based position of an annotation in the document,
+	 *                    or 0 if it's unknown
+	 * @return True, if the annotations are in document order
+	 */
+	static <S extends Annotation> boolean arrange(List<S> annotations, ToIntFunction<? super S> index) {
+		if (sortByIndex(annotations, index))
+			return true;
+		List<S> nested = nestingOrder(annotations);
+		annotations.clear();
+		annotations.addAll(nested);
+		return false;
+	}
+
+	/**
+	 * Rearranges annotations in index order into document order. The document
+	 * order is only used if the begin offsets are monotonic in it: The document
+	 * order of annotations whose offsets have been modified after reading may
+	 * not be their order by begin.
+	 * 
+	 * @param annotations The annotations in index order, rearranged in place
+	 *                    unless the document order is not usable
+	 * @param index       The 1-based position of an annotation in the document,
+	 *                    or 0 if it's unknown
+	 * @return False, if the document order is unknown or not usable
+	 */
+	static <S extends Annotation> boolean sortByIndex(List<S> annotations, ToIntFunction<? super S> index) {
+		int n = annotations.size();
+		long[] order = new long[n];
+		boolean sorted = true;
+		for (int i = 0; i < n; i++) {
+			int position = index.applyAsInt(annotations.get(i));
+			if (position <= 0)
+				return false;
+			order[i] = ((long) position << 32) | i;
+			sorted = sorted && (i == 0 || order[i - 1] < order[i]);
+		}
+		if (!sorted)
+			Arrays.sort(order);
+		for (int i = 1; i < n; i++)
+			if (annotations.get((int) order[i - 1]).getBegin() > annotations.get((int) order[i]).getBegin())
+				return false;
+		if (!sorted) {
+			List<S> copy = new ArrayList<S>(annotations);
+			for (int i = 0; i < n; i++)
+				annotations.set(i, copy.get((int) order[i]));
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the keys for annotations in document order. An annotation is
+	 * nested into an open one if it begins before the end of the open one, or,
+	 * at the end of the open one, if it is empty and deeper. The depths can only
+	 * be compared if all annotations between two annotations in document order
+	 * are given. For a window of the document, the list therefore contains all
+	 * annotations that begin within the window, and those that end after the
+	 * window are only used for nesting, without keys.
+	 * 
+	 * @param annotations The annotations in document order
+	 * @param limit       Annotations that end after this offset get no keys
+	 * @return The keys in the order in which they are written
+	 */
+	long[] nest(List<S> annotations, int limit) {
+		int n = annotations.size();
+		int[] depths = new int[n];
+		for (int i = 0; i < n; i++)
+			depths[i] = getDepth(annotations.get(i));
+
+		long[] events = new long[2 * n];
+		int e = 0;
+		int[] stack = new int[n];
+		int top = 0;
+		for (int i = 0; i < n; i++) {
+			S annotation = annotations.get(i);
+			// close elements that end before this one, or are not its ancestors
+			while (top > 0 && !contains(annotations.get(stack[top - 1]), depths[stack[top - 1]], annotation,
+					depths[i])) {
+				int closed = stack[--top];
+				if (annotations.get(closed).getEnd() <= limit)
+					events[e++] = key(annotations.get(closed).getEnd(), false, n - 1 - closed);
+			}
+			boolean parent = i + 1 < n && contains(annotation, depths[i], annotations.get(i + 1), depths[i + 1]);
+			if (annotation.getEnd() > limit)
+				stack[top++] = i;
+			else if (annotation.getBegin() == annotation.getEnd() && !parent)
+				events[e++] = key(annotation.getBegin(), EMPTY, i);
+			else {
+				events[e++] = key(annotation.getBegin(), true, i);
+				stack[top++] = i;
+			}
+		}
+		while (top > 0) {
+			int closed = stack[--top];
+			if (annotations.get(closed).getEnd() <= limit)
+				events[e++] = key(annotations.get(closed).getEnd(), false, n - 1 - closed);
+		}
+		return Arrays.copyOf(events, e);
+	}
+
+	/**
+	 * Decides whether an annotation contains the annotation that follows it (or
+	 * one of its descendants) in document order. If the next annotation begins
+	 * before the end, it is a descendant. If it begins at the end, only an empty
+	 * annotation can be a descendant, which is told by the depth.
+	 */
+	private static boolean contains(Annotation annotation, int depth, Annotation next, int nextDepth) {
+		if (next.getBegin() < annotation.getEnd())
+			return true;
+		if (next.getBegin() > annotation.getEnd() || next.getEnd() > next.getBegin())
+			return false;
+		return depth < nextDepth;
+	}
+
+	/**
+	 * Sorts annotations in nesting order: By begin (ascending), by end
+	 * (descending), and annotations with equal span in reverse index order, such
+	 * that the annotation that comes first in the index is the innermost one. The
+	 * input is expected in annotation index order (begin ascending, end
+	 * descending), therefore only runs of equal spans need to be reversed.
+	 * 
+	 * @param annotations Annotations in index order
+	 * @return A new list in nesting order
+	 */
+	static <S extends Annotation> List<S> nestingOrder(Collection<S> annotations) {
+		List<S> list = new ArrayList<S>(annotations);
+		int run = 0;
+		for (int i = 1; i <= list.size(); i++) {
+			if (i == list.size() || list.get(i).getBegin() != list.get(run).getBegin()
+					|| list.get(i).getEnd() != list.get(run).getEnd()) {
+				if (i - run > 1)
+					Collections.reverse(list.subList(run, i));
+				run = i;
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Encodes the begin and end of all annotations as primitive keys, whose
+	 * natural order is the order in which tags are written. The upper 32 bits are
+	 * the character offset. Bit 31 is 0 for end tags and 1 for begin and empty
+	 * tags, so that at each offset, elements are closed before new ones are
+	 * opened. Bit 30 is set for empty tags. The lower 30 bits are the position <i>n</i> in nesting order for
+	 * begin tags (outer before inner), and <i>N-1-n</i> for end tags (inner
+	 * before outer). Empty elements only have a begin key, and come after all
+	 * other elements that begin at the same offset. Since this order can't tell
+	 * an empty element after the last child of an element from one after the
+	 * element, it is only used if the document order is unknown.
+	 * 
+	 * @param annotations The annotations in nesting order
+	 * @return An unsorted array of keys
+	 */
+	static long[] events(List<? extends Annotation> annotations) {
+		int n = annotations.size(), empty = 0;
+		for (Annotation annotation : annotations)
+			if (annotation.getBegin() == annotation.getEnd())
+				empty++;
+		long[] events = new long[2 * n - empty];
+		int e = 0;
+		for (int i = 0; i < n; i++) {
+			Annotation annotation = annotations.get(i);
+			if (annotation.getBegin() == annotation.getEnd())
+				events[e++] = key(annotation.getBegin(), EMPTY, i);
+			else {
+				events[e++] = key(annotation.getBegin(), true, i);
+				events[e++] = key(annotation.getEnd(), false, n - 1 - i);
+			}
 		}
+		return events;
+	}
+
+	/**
+	 * Bit 30 of a key marks empty tags
+	 */
+	static final long EMPTY = 0xC0000000L;
+
+	static long key(int offset, boolean begin, int ordinal) {
+		return key(offset, begin ? 0x80000000L : 0L, ordinal);
+	}
+
+	static long key(int offset, long kind, int ordinal) {
+		return ((long) offset << 32) | kind | ordinal;
+	}
+
+	static int offset(long key) {
+		return (int) (key >>> 32);
+	}
+
+	static boolean isBegin(long key) {
+		return (key & 0x80000000L) != 0;
+	}
+
+	static boolean isEmpty(long key) {
+		return (key & EMPTY) == EMPTY;
+	}
+
+	static int ordinal(long key) {
+		return (int) (key & 0x3FFFFFFFL);
+	}
+
+	/**
+	 * Appends a range of the text. Writers copy the whole range into a temporary
+	 * array, therefore we copy it piecewise into our buffer.
+	 */
+	private static void appendText(Appendable os, String text, int from, int to, char[] buffer)
+			throws IOException {
+		if (buffer == null) {
+			os.append(text, from, to);
+			return;
+		}
+		Writer writer = (Writer) os;
+		while (from < to) {
+			int n = Math.min(buffer.length, to - from);
+			text.getChars(from, from + n, buffer, 0);
+			writer.write(buffer, 0, n);
+			from += n;
+		}
+	}
+
+	public int getSegmentSize() {
+		return segmentSize;
+	}
 
+	/**
+	 * Sets the minimal number of characters of the text in a segment, if
+	 * documents are written in parallel. Documents with less than twice as many
+	 * characters are written in one segment.
+	 * 
+	 * @param segmentSize The number of characters
+	 * @since 2.1.0
+	 */
+	public void setSegmentSize(int segmentSize) {
+		this.segmentSize = segmentSize;
 	}
 
 	public Class<S> getAnnotationClass() {
@@ -2,33 +2,30 @@ package de.unistuttgart.ims.uima.io.xml;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.AbstractMap;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 import org.apache.uima.UIMAException;
 import org.apache.uima.cas.FeatureStructure;
 import org.apache.uima.fit.factory.JCasFactory;
-import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.cas.TOP;
-import org.apache.uima.jcas.tcas.Annotation;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.nodes.Node;
-import org.jsoup.nodes.XmlDeclaration;
-import org.jsoup.parser.Parser;
 import org.jsoup.select.Elements;
 
 import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
-import de.unistuttgart.ims.uima.io.xml.type.XMLParsingDescription;
 
 /**
  * This class is used to generate a UIMA document from arbitrary XML. The core
@@ -41,7 +38,9 @@ import de.unistuttgart.ims.uima.io.xml.type.XMLParsingDescription;
  * entire string (and has the tag name <code>s</code> as a feature), one
  * annotation covers "the" (tag name: <code>det</code>), and one annotation
  * covers "dog" (tag name: <code>n</code>). In addition, we store a CSS selector
- * for each annotation, which allows finding the element in the DOM tree. After
+ * for each annotation, which allows finding the element in the DOM tree (this
+ * can be switched off with {@link #setStoreSelectors(boolean)}, and other
+ * features with {@link #setXmlElementFeatures(Set)}). After
  * the initial conversion, rules can be applied to convert some XML elements to
  * other UIMA annotations. Rules are expressed in CSS-like syntax.
  * 
@@ -77,15 +76,31 @@ import de.unistuttgart.ims.uima.io.xml.type.XMLParsingDescription;
  * elements (as defined in {@link Visitor#blockElements}) get an extra newline
  * at the end.
  * 
+ * <h2>Streaming</h2> By default, the entire XML document is parsed into a DOM
+ * before it is converted. For very large documents, a streaming engine can be
+ * switched on with {@link #setStreaming(boolean)}. It reads the input with a
+ * StAX pull parser, keeps only the currently open elements in memory, and
+ * applies rules as soon as an element is closed. Only rules whose selectors can
+ * be decided from an element and its ancestors are supported in this mode; see
+ * {@link #setStreaming(boolean)} for details.
+ * 
+ * <h2>Concurrency</h2> A reader keeps the state of the last document it has
+ * read (e.g., {@link #getDocument()}), and can therefore not be used by
+ * multiple threads at the same time. To read documents concurrently, create an
+ * immutable {@link ReaderProfile} with {@link #compile()} once, and share it.
+ * 
+ * <h2>Monitoring</h2> To find out where time is spent, a
+ * {@link ReaderListener} can be set with {@link #setListener(ReaderListener)}.
+ * It receives the duration of each stage, and the number of matches and the
+ * time spent in selectors and callbacks for each rule.
+ * 
+ * <h2>Parallel callbacks</h2> Expensive rule callbacks can be run in parallel
+ * with {@link #setCallbackPool(ForkJoinPool)}.
+ * 
  * @since 1.0.0
  */
 public class GenericXmlReader<D extends TOP> {
 
-	/**
-	 * The DOM
-	 */
-	Document doc;
-
 	/**
 	 * A CSS expression to specify the root for the documentText
 	 */
@@ -93,23 +108,71 @@ public class GenericXmlReader<D extends TOP> {
 
 	protected Function<Element, Boolean> ignoreFunction = null;
 
+	/**
+	 * Tag names of elements to ignore
+	 */
+	Set<String> ignoredTags = new HashSet<String>();
+
+	/**
+	 * Attribute names that mark elements to ignore
+	 */
+	Set<String> ignoredAttributes = new HashSet<String>();
+
+	IgnoreMode ignoreMode = IgnoreMode.ELEMENT;
+
 	boolean preserveWhitespace = false;
 
 	@SuppressWarnings("rawtypes")
 	List<Rule> elementMapping = new LinkedList<Rule>();
 
-	Map<String, Map.Entry<Element, FeatureStructure>> idRegistry = new HashMap<String, Map.Entry<Element, FeatureStructure>>();
+	/**
+	 * The compiled configuration, created on demand
+	 */
+	ReaderProfile<D> profile = null;
+
+	/**
+	 * The state of the last document read
+	 */
+	ReaderContext<D> context = null;
 
 	Class<D> documentClass;
 
 	boolean skipEmptyElements = false;
 
+	/**
+	 * Whether to use the streaming engine
+	 */
+	boolean streaming = false;
+
+	/**
+	 * The features to fill in the XMLElement annotations
+	 */
+	Set<XmlElementFeature> xmlElementFeatures = EnumSet.allOf(XmlElementFeature.class);
+
+	/**
+	 * Receives timings and counters
+	 */
+	ReaderListener listener = ReaderListener.NONE;
+
+	/**
+	 * The pool on which callbacks are run, or null
+	 */
+	ForkJoinPool callbackPool = null;
+
+	/**
+	 * The pool of tag and attribute names, or null
+	 */
+	NamePool namePool = new NamePool();
+
+	/**
+	 * Whether to create the structural index of each document
+	 */
+	boolean structuralIndex = false;
+
 	public GenericXmlReader(Class<D> documentClass) {
 		this.documentClass = documentClass;
 	}
 
-	private static final Logger logger = LogManager.getLogger(GenericXmlReader.class);
-
 	/**
 	 * Runs the conversion and executes all rules. Produces a new JCas.
 	 * 
@@ -122,6 +185,37 @@ public class GenericXmlReader<D extends TOP> {
 		return read(JCasFactory.createJCas(), xmlStream);
 	}
 
+	/**
+	 * Reads a file and executes all rules. Produces a new JCas. Large files are
+	 * memory-mapped, and the encoding is detected from the byte order mark or
+	 * the XML declaration.
+	 * 
+	 * @param path The XML file
+	 * @return The populated JCas object
+	 * @throws IOException   If the file can't be read
+	 * @throws UIMAException If there is an issue with creating the JCas.
+	 * @since 2.1.0
+	 */
+	public JCas read(Path path) throws IOException, UIMAException {
+		context = compile().newContext(JCasFactory.createJCas());
+		return context.read(path);
+	}
+
+	/**
+	 * Reads a document from a buffer and executes all rules. Produces a new
+	 * JCas. The buffer is not copied, and its position is not changed.
+	 * 
+	 * @param buffer The XML data between position and limit
+	 * @return The populated JCas object
+	 * @throws IOException   If the data can't be decoded
+	 * @throws UIMAException If there is an issue with creating the JCas.
+	 * @since 2.1.0
+	 */
+	public JCas read(ByteBuffer buffer) throws IOException, UIMAException {
+		context = compile().newContext(JCasFactory.createJCas());
+		return context.read(buffer);
+	}
+
 	/**
 	 * Runs the conversion and executes all rules.
 	 * 
@@ -133,53 +227,27 @@ public class GenericXmlReader<D extends TOP> {
 	 */
 	@Deprecated
 	public JCas read(JCas jcas, InputStream xmlStream) throws IOException {
+		context = compile().newContext(jcas);
+		return context.read(xmlStream);
+	}
 
-		// parse the input
-		doc = Jsoup.parse(xmlStream, "UTF-8", "", Parser.xmlParser());
-
-		// prepare traversing the DOM
-		Visitor vis = new Visitor(jcas, isPreserveWhitespace());
-
-		// set ignore function if needed
-		if (getIgnoreFunction() != null)
-			vis.setIgnoreFunction(getIgnoreFunction());
-
-		// select the root element
-		Element root;
-		if (textRootSelector == null)
-			root = doc;
-		else
-			root = doc.select(textRootSelector).first();
-
-		// this populates the JCas, and creates XML annotations
-		root.traverse(vis);
-
-		// closes the CAS
-		vis.getJCas();
-
-		// process rules
-		for (Rule<?> mapping : elementMapping) {
-			applyRule(jcas, (mapping.isGlobal() ? doc : root), vis.getAnnotationMap(), mapping);
-		}
-
-		// store xml declarations
-		XMLParsingDescription parsingDescription = new XMLParsingDescription(jcas);
-		parsingDescription.setEncoding(doc.charset().name());
-		Node rootNode = doc.root();
-		List<String> declarations = new LinkedList<String>();
-		for (Node topNode : rootNode.childNodes()) {
-			if (topNode instanceof XmlDeclaration) {
-				XmlDeclaration xmlDecl = (XmlDeclaration) topNode;
-				declarations.add(xmlDecl.getWholeDeclaration());
-			}
-		}
-		parsingDescription.setXmlDeclarations(ArrayUtil.toStringArray(jcas, declarations));
-		parsingDescription.addToIndexes();
-		return jcas;
+	/**
+	 * Creates an immutable snapshot of the current configuration of this reader,
+	 * which can be used to read documents concurrently. Later changes to this
+	 * reader do not affect the returned profile.
+	 * 
+	 * @return The compiled profile
+	 * @since 2.1.0
+	 */
+	public ReaderProfile<D> compile() {
+		if (profile == null)
+			profile = new ReaderProfile<D>(this);
+		return profile;
 	}
 
 	public void addRule(Rule<?> rule) {
 		elementMapping.add(rule);
+		profile = null;
 	}
 
 	/**
@@ -192,6 +260,7 @@ public class GenericXmlReader<D extends TOP> {
 	 */
 	public <T extends TOP> void addRule(String selector, Class<T> targetClass) {
 		elementMapping.add(new Rule<T>(selector, targetClass, null));
+		profile = null;
 	}
 
 	/**
@@ -206,16 +275,19 @@ public class GenericXmlReader<D extends TOP> {
 	 */
 	public <T extends TOP> void addRule(String selector, Class<T> targetClass, BiConsumer<T, Element> callback) {
 		elementMapping.add(new Rule<T>(selector, targetClass, callback));
+		profile = null;
 	}
 
 	public void addGlobalRule(String selector, BiConsumer<D, Element> callback) {
 		Rule<D> r = new Rule<D>(selector, documentClass, callback, true);
 		r.setUnique(true);
 		elementMapping.add(r);
+		profile = null;
 	}
 
 	public <T extends TOP> void addGlobalRule(String selector, Class<T> targetClass, BiConsumer<T, Element> callback) {
 		elementMapping.add(new Rule<T>(selector, targetClass, callback, true));
+		profile = null;
 	}
 
 	/**
@@ -225,7 +297,7 @@ public class GenericXmlReader<D extends TOP> {
 	 * @return The feature structure
 	 */
 	public Map.Entry<Element, FeatureStructure> getAnnotation(String id) {
-		return idRegistry.get(id);
+		return (context == null ? null : context.getAnnotation(id));
 	}
 
 	/**
@@ -235,47 +307,64 @@ public class GenericXmlReader<D extends TOP> {
 	 * @return a boolean
 	 */
 	public boolean exists(String id) {
-		return idRegistry.containsKey(id);
+		return context != null && context.exists(id);
 	}
 
+	/**
+	 * Creates the feature structure for an element matched by a rule. Called by
+	 * {@link ReaderContext} for each match if a subclass overrides it (this also
+	 * applies to the profile compiled from the subclass, see
+	 * {@link ReaderProfile}).
+	 * 
+	 * @deprecated Rules are applied by {@link ReaderContext}, use a callback to
+	 *             modify the feature structures
+	 */
+	@Deprecated
 	protected <T extends TOP> T getFeatureStructure(JCas jcas, XMLElement hAnno, Element elm, Rule<T> mapping) {
-		T annotation = null;
-		if (mapping.isUnique()) {
-			annotation = getOrCreate(jcas, mapping.getTargetClass());
-		} else {
-			annotation = jcas.getCas().createFS(JCasUtil.getType(jcas, mapping.getTargetClass()));
-			jcas.getCas().addFsToIndexes(annotation);
-			if (Annotation.class.isAssignableFrom(mapping.getTargetClass())) {
-				((Annotation) annotation).setBegin(hAnno.getBegin());
-				((Annotation) annotation).setEnd(hAnno.getEnd());
-			}
-
-			if (elm.hasAttr("xml:id") && !exists(elm.attr("xml:id"))) {
-				String id = elm.attr("xml:id");
-				idRegistry.put(id, new AbstractMap.SimpleEntry<Element, FeatureStructure>(elm, annotation));
-			}
-
-		}
-		return annotation;
+		return getContext(jcas).getFeatureStructure(hAnno, elm, mapping);
 	}
 
+	/**
+	 * Applies a rule to all matching elements below the root element. If a
+	 * subclass overrides it, {@link ReaderContext} calls it once per rule instead
+	 * of applying all rules in a single pass, and streaming is disabled.
+	 * 
+	 * @param annoMap The XML annotations, keyed by the CSS selectors of their
+	 *                elements
+	 * @deprecated Rules are applied by {@link ReaderContext}, which looks up
+	 *             annotations by element instead of computing selectors
+	 */
+	@Deprecated
 	protected <T extends TOP> void applyRule(JCas jcas, Element rootElement, Map<String, XMLElement> annoMap,
 			Rule<T> mapping) {
 		Elements elms = rootElement.select(mapping.getSelector());
 		for (Element elm : elms) {
-			XMLElement hAnno = annoMap.get(elm.cssSelector());
-			if (getIgnoreFunction() != null && getIgnoreFunction().apply(elm)) {
-				logger.error(
-						"You are about to apply a rule that involves an XML element that has been skipped. If this works, it likely has unintended side effects.");
-			}
-			if (!skipEmptyElements || elm.hasText() || elm.childNodeSize() > 0) {
-				T annotation = getFeatureStructure(jcas, hAnno, elm, mapping);
-				if (mapping.getCallback() != null && annotation != null)
-					mapping.getCallback().accept(annotation, elm);
-			}
+			getContext(jcas).applyRule(elm, annoMap.get(elm.cssSelector()), mapping, -1);
 		}
 	}
 
+	private ReaderContext<D> getContext(JCas jcas) {
+		if (context == null || context.getJCas() != jcas)
+			context = compile().newContext(jcas);
+		return context;
+	}
+
+	/**
+	 * How ignored elements are handled, see {@link #setIgnoreMode(IgnoreMode)}
+	 * 
+	 * @since 2.1.0
+	 */
+	public static enum IgnoreMode {
+		/**
+		 * Skip only the element, but keep its content
+		 */
+		ELEMENT,
+		/**
+		 * Skip the element and its content
+		 */
+		SUBTREE
+	}
+
 	/**
 	 * This class represents the rules we apply
 	 * 
@@ -348,10 +437,14 @@ public class GenericXmlReader<D extends TOP> {
 
 	public void setTextRootSelector(String textRootSelector) {
 		this.textRootSelector = textRootSelector;
+		profile = null;
 	}
 
+	/**
+	 * @return The DOM of the last document read, or null in streaming mode
+	 */
 	public Document getDocument() {
-		return doc;
+		return (context == null ? null : context.getDocument());
 	}
 
 	public boolean isPreserveWhitespace() {
@@ -360,16 +453,11 @@ public class GenericXmlReader<D extends TOP> {
 
 	public void setPreserveWhitespace(boolean preserveWhitespace) {
 		this.preserveWhitespace = preserveWhitespace;
+		profile = null;
 	}
 
 	protected static <T extends TOP> T getOrCreate(JCas jcas, Class<T> targetClass) {
-		if (JCasUtil.exists(jcas, targetClass)) {
-			return JCasUtil.selectSingle(jcas, targetClass);
-		} else {
-			T annotation = jcas.getCas().createFS(JCasUtil.getType(jcas, targetClass));
-			jcas.getCas().addFsToIndexes(annotation);
-			return annotation;
-		}
+		return ReaderContext.getOrCreate(jcas, targetClass);
 	}
 
 	/**
@@ -388,7 +476,11 @@ public class GenericXmlReader<D extends TOP> {
 	 * JCas at all, and can not be used in rules.
 	 * 
 	 * The main reason for using this function is to make processing faster if the
-	 * XML file contains a large number of fine-grained, but unneeded tags.
+	 * XML file contains a large number of fine-grained, but unneeded tags. If
+	 * elements can be identified by tag or attribute name,
+	 * {@link #addIgnoredTags(String...)} and
+	 * {@link #addIgnoredAttributes(String...)} are faster. To skip elements
+	 * together with their content, see {@link #setIgnoreMode(IgnoreMode)}.
 	 * 
 	 * @param ignoreFunction The function maps from an Element to a boolean. Note
 	 *                       that the function defines which elements to skip. By
@@ -396,6 +488,199 @@ public class GenericXmlReader<D extends TOP> {
 	 */
 	public void setIgnoreFunction(Function<Element, Boolean> ignoreFunction) {
 		this.ignoreFunction = ignoreFunction;
+		profile = null;
+	}
+
+	/**
+	 * Ignores all elements with one of the given tag names. This is equivalent
+	 * to, but faster than, an ignore function that compares tag names. Tag names
+	 * are case-sensitive.
+	 * 
+	 * @param tags The tag names
+	 * @since 2.1.0
+	 */
+	public void addIgnoredTags(String... tags) {
+		ignoredTags.addAll(Arrays.asList(tags));
+		profile = null;
+	}
+
+	/**
+	 * Ignores all elements that have one of the given attributes, regardless of
+	 * the attribute value.
+	 * 
+	 * @param attributes The attribute names
+	 * @since 2.1.0
+	 */
+	public void addIgnoredAttributes(String... attributes) {
+		ignoredAttributes.addAll(Arrays.asList(attributes));
+		profile = null;
+	}
+
+	public Set<String> getIgnoredTags() {
+		return Collections.unmodifiableSet(ignoredTags);
+	}
+
+	public Set<String> getIgnoredAttributes() {
+		return Collections.unmodifiableSet(ignoredAttributes);
+	}
+
+	public IgnoreMode getIgnoreMode() {
+		return ignoreMode;
+	}
+
+	/**
+	 * Defines what happens to ignored elements. With {@link IgnoreMode#ELEMENT}
+	 * (the default), only the element itself is skipped, its text and child
+	 * elements are read as usual. With {@link IgnoreMode#SUBTREE}, the element is
+	 * skipped together with all its content: Its text is not part of the
+	 * document text, and its descendants are never visited. Only global rules are
+	 * applied to elements in ignored subtrees. Global rules that create
+	 * annotations are not applied to them either, since the elements have no
+	 * position in the text; this is logged as an error.
+	 * 
+	 * @param ignoreMode The mode
+	 * @since 2.1.0
+	 */
+	public void setIgnoreMode(IgnoreMode ignoreMode) {
+		this.ignoreMode = ignoreMode;
+		profile = null;
+	}
+
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * Switches between the DOM-based engine (default) and the streaming engine.
+	 * The streaming engine never builds a DOM. Instead, the elements passed to
+	 * rule callbacks carry their attributes, their ancestors and their text
+	 * content, but no child elements. Rules are applied when an element is closed,
+	 * i.e., in document order of the end tags, and before the document text has
+	 * been set in the JCas. Rules with selectors that need to look at siblings or
+	 * children (e.g., <code>:first-child</code>, <code>+</code>, <code>~</code>,
+	 * <code>:has()</code>) are skipped with a warning. In streaming mode,
+	 * {@link #getDocument()} returns null.
+	 * 
+	 * @param streaming Whether to use the streaming engine
+	 * @since 2.1.0
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+		profile = null;
+	}
+
+	public boolean isStoreSelectors() {
+		return xmlElementFeatures.contains(XmlElementFeature.SELECTOR);
+	}
+
+	/**
+	 * By default, the CSS selector of each XML element is stored in the feature
+	 * <code>Selector</code> of its {@link XMLElement} annotation. Computing
+	 * selectors is expensive for deep or wide documents, because it involves
+	 * looking at all ancestors and their siblings. If the feature is not needed,
+	 * it can be switched off with this method, and the feature remains empty.
+	 * This is a shortcut for removing {@link XmlElementFeature#SELECTOR} from
+	 * the set of features, see {@link #setXmlElementFeatures(Set)}.
+	 * 
+	 * @param storeSelectors Whether to compute and store selectors
+	 * @since 2.1.0
+	 */
+	public void setStoreSelectors(boolean storeSelectors) {
+		if (storeSelectors)
+			xmlElementFeatures.add(XmlElementFeature.SELECTOR);
+		else
+			xmlElementFeatures.remove(XmlElementFeature.SELECTOR);
+		profile = null;
+	}
+
+	/**
+	 * @return The features that are filled in {@link XMLElement} annotations
+	 */
+	public Set<XmlElementFeature> getXmlElementFeatures() {
+		return Collections.unmodifiableSet(xmlElementFeatures);
+	}
+
+	/**
+	 * Selects the features that are filled in each {@link XMLElement}
+	 * annotation. All other features remain null. If, for instance, downstream
+	 * components only need the tag name,
+	 * <code>setXmlElementFeatures(EnumSet.of(XmlElementFeature.TAG))</code>
+	 * avoids computing and storing selectors, attributes and classes for every
+	 * element. By default, all features are filled.
+	 * 
+	 * @param features The features to fill
+	 * @since 2.1.0
+	 */
+	public void setXmlElementFeatures(Set<XmlElementFeature> features) {
+		this.xmlElementFeatures = EnumSet.noneOf(XmlElementFeature.class);
+		this.xmlElementFeatures.addAll(features);
+		profile = null;
+	}
+
+	public ReaderListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Sets a listener that receives the duration of each stage, the number of
+	 * elements and text nodes, and the number of matches and the time spent in
+	 * selectors and callbacks of each rule. If the listener is null or
+	 * {@link ReaderListener#NONE} (the default), nothing is measured.
+	 * 
+	 * @param listener The listener
+	 * @since 2.1.0
+	 */
+	public void setListener(ReaderListener listener) {
+		this.listener = (listener == null ? ReaderListener.NONE : listener);
+		profile = null;
+	}
+
+	public ForkJoinPool getCallbackPool() {
+		return callbackPool;
+	}
+
+	/**
+	 * Runs rule callbacks in parallel on the given pool. All feature structures
+	 * are still created on the reading thread, in the order of the rules and
+	 * matches, such that the content of the CAS does not depend on the number of
+	 * threads. Afterwards, the callbacks of all rules are run concurrently,
+	 * except for unique rules (like global rules on the document), whose
+	 * callbacks share a feature structure and are run sequentially on the
+	 * reading thread.
+	 * 
+	 * Callbacks must therefore be thread-safe: They may set features of the
+	 * feature structure they are called with, but must not create new feature
+	 * structures, change the begin or end of annotations, or otherwise modify the
+	 * CAS or its indexes. By default (null), callbacks are run on the reading
+	 * thread. In streaming mode, callbacks are always run on the reading thread.
+	 * 
+	 * @param callbackPool The pool, e.g. {@link ForkJoinPool#commonPool()}, or
+	 *                     null
+	 * @since 2.1.0
+	 */
+	public void setCallbackPool(ForkJoinPool callbackPool) {
+		this.callbackPool = callbackPool;
+		profile = null;
+	}
+
+	public NamePool getNamePool() {
+		return namePool;
+	}
+
+	/**
+	 * Sets the pool from which tag names, class names and (in streaming mode)
+	 * attribute names are taken, such that the annotations of all documents share
+	 * the same strings. By default, each reader has its own pool, which is shared
+	 * by the profiles compiled from it. Readers can share a pool (e.g.,
+	 * {@link NamePool#SHARED}) by setting it explicitly. If the pool is null,
+	 * names are not pooled.
+	 * 
+	 * @param namePool The pool, or null
+	 * @since 2.1.0
+	 */
+	public void setNamePool(NamePool namePool) {
+		this.namePool = namePool;
+		profile = null;
 	}
 
 	public boolean isSkipEmptyElements() {
@@ -404,5 +689,34 @@ public class GenericXmlReader<D extends TOP> {
 
 	public void setSkipEmptyElements(boolean skipEmptyElements) {
 		this.skipEmptyElements = skipEmptyElements;
+		profile = null;
+	}
+
+	public boolean isStructuralIndex() {
+		return structuralIndex;
+	}
+
+	/**
+	 * Creates a {@link StructuralIndex} of the {@link XMLElement} annotations at
+	 * the end of each read, which is available from
+	 * {@link #getStructuralIndex()}. The index is part of the read (and included
+	 * in the time reported for {@link ReaderListener.Stage#READ}). By default,
+	 * no index is created.
+	 * 
+	 * @param structuralIndex Whether to create the index
+	 * @since 2.1.0
+	 */
+	public void setStructuralIndex(boolean structuralIndex) {
+		this.structuralIndex = structuralIndex;
+		profile = null;
+	}
+
+	/**
+	 * @return The structural index of the last document read, or null if
+	 *         {@link #setStructuralIndex(boolean)} is not set
+	 * @since 2.1.0
+	 */
+	public StructuralIndex getStructuralIndex() {
+		return (context == null ? null : context.structuralIndex);
 	}
 }
@@ -0,0 +1,58 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.Element;
+
+/**
+ * The compiled combination of ignored tags, ignored attributes and the ignore
+ * function of a reader. Tags and attributes are looked up in hash sets, the
+ * ignore function is only called for elements that are not already ignored by
+ * the sets.
+ *
+ * @since 2.1.0
+ */
+class IgnoreFilter implements Function<Element, Boolean> {
+
+	final Set<String> tags;
+
+	final Set<String> attributes;
+
+	final Function<Element, Boolean> function;
+
+	IgnoreFilter(Set<String> tags, Set<String> attributes, Function<Element, Boolean> function) {
+		this.tags = new HashSet<String>(tags);
+		this.attributes = new HashSet<String>(attributes);
+		this.function = function;
+	}
+
+	@Override
+	public Boolean apply(Element elm) {
+		if (!tags.isEmpty() && tags.contains(elm.tagName()))
+			return true;
+		if (!attributes.isEmpty() && elm.attributes().size() > 0)
+			for (Attribute attribute : elm.attributes())
+				if (attributes.contains(attribute.getKey()))
+					return true;
+		return function != null && function.apply(elm);
+	}
+
+	/**
+	 * Compiles the ignore settings.
+	 *
+	 * @param tags       Tag names of ignored elements
+	 * @param attributes Attribute names that mark ignored elements
+	 * @param function   The ignore function, can be null
+	 * @return A function that combines all settings, or null if nothing is
+	 *         ignored
+	 */
+	static Function<Element, Boolean> compile(Set<String> tags, Set<String> attributes,
+			Function<Element, Boolean> function) {
+		if (tags.isEmpty() && attributes.isEmpty())
+			return function;
+		return new IgnoreFilter(tags, attributes, function);
+	}
+}
@@ -0,0 +1,833 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.apache.uima.util.CasCopier;
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.nodes.XmlDeclaration;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeVisitor;
+
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.Rule;
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+
+/**
+ * Reads successive versions of the same document, and rebuilds only the
+ * regions that have changed since the previous version. The new DOM is
+ * compared with the previous version, using a hash of each subtree and
+ * elements with an <code>xml:id</code> as anchors. The new JCas is populated
+ * from the new DOM, but unchanged subtrees are not visited: Their text is
+ * taken from the previous JCas, and their {@link XMLElement} annotations are
+ * copied with shifted offsets. Rules still match on the whole DOM, but for
+ * elements in unchanged subtrees, the annotations that the same rule has
+ * created in the previous version are copied instead of applying the rule and
+ * its callback again. The differences are reported as {@link Change}s with
+ * offsets in both versions.
+ *
+ * <pre>
+ * IncrementalReader&lt;DocumentMetaData&gt; reader = new IncrementalReader&lt;DocumentMetaData&gt;(gxr.compile());
+ * reader.read(path);
+ * // after each save
+ * IncrementalReader.Update update = reader.read(path);
+ * for (IncrementalReader.Change change : update.getChanges())
+ * 	// re-annotate between change.getBegin() and change.getEnd()
+ * </pre>
+ *
+ * Annotations are copied as they are in the previous JCas, including changes
+ * made after reading. Only annotations of non-unique rules with an annotation
+ * type are copied, other rules are applied on all matches. The reader keeps
+ * the previous JCas, which must not be reset before the next version has been
+ * read, and a summary of the previous DOM in arrays. A reader must not be
+ * shared between threads. Changes are found on the level of nodes, a changed
+ * region is therefore at least as large as the changed text node or element.
+ * The profile must not be in streaming mode, and the ignore function must
+ * only depend on the element itself. If the reader overrides the deprecated
+ * <code>applyRule</code> method, all regions are rebuilt.
+ *
+ * @param <D> The document class
+ * @since 2.1.0
+ */
+public class IncrementalReader<D extends TOP> {
+
+	final ReaderProfile<D> profile;
+
+	/**
+	 * For each rule, whether its annotations are copied from the previous version
+	 */
+	final boolean[] reusable;
+
+	/**
+	 * The summary of the previous version, or null
+	 */
+	Tree previous = null;
+
+	/**
+	 * The JCas of the previous version, or null
+	 */
+	JCas previousJCas = null;
+
+	/**
+	 * @param profile The profile, not in streaming mode
+	 * @throws IllegalArgumentException If the profile is in streaming mode
+	 */
+	public IncrementalReader(ReaderProfile<D> profile) {
+		if (profile.isStreaming())
+			throw new IllegalArgumentException("Incremental reading requires a DOM, streaming is not supported.");
+		this.profile = profile;
+		this.reusable = new boolean[profile.rules.size()];
+		for (int i = 0; i < reusable.length; i++) {
+			Rule<?> rule = profile.rules.get(i);
+			reusable[i] = !rule.isUnique() && Annotation.class.isAssignableFrom(rule.getTargetClass());
+		}
+	}
+
+	/**
+	 * Reads the next version of the document into a new JCas.
+	 *
+	 * @param xmlStream The stream offering the XML data
+	 * @return The new JCas and the changes
+	 * @throws IOException   If the input stream errors
+	 * @throws UIMAException If there is an issue with creating the JCas.
+	 */
+	public Update read(InputStream xmlStream) throws IOException, UIMAException {
+		return read(JCasFactory.createJCas(), xmlStream);
+	}
+
+	/**
+	 * Reads the next version of the document from a file into a new JCas.
+	 *
+	 * @param path The XML file
+	 * @return The new JCas and the changes
+	 * @throws IOException   If the file can't be read
+	 * @throws UIMAException If there is an issue with creating the JCas.
+	 */
+	public Update read(Path path) throws IOException, UIMAException {
+		Rebuild rebuild = new Rebuild(JCasFactory.createJCas());
+		rebuild.context.read(path);
+		return update(rebuild);
+	}
+
+	/**
+	 * Reads the next version of the document into an existing, empty JCas.
+	 *
+	 * @param jcas      The JCas to populate, not the JCas of the previous version
+	 * @param xmlStream The stream offering the XML data
+	 * @return The new JCas and the changes
+	 * @throws IOException If the input stream errors
+	 */
+	public Update read(JCas jcas, InputStream xmlStream) throws IOException {
+		Rebuild rebuild = new Rebuild(jcas);
+		rebuild.context.read(xmlStream);
+		return update(rebuild);
+	}
+
+	/**
+	 * Forgets the previous version, the next version is read completely and
+	 * reported as entirely changed.
+	 */
+	public void reset() {
+		previous = null;
+		previousJCas = null;
+	}
+
+	Update update(Rebuild rebuild) {
+		ReaderContext<D> context = rebuild.context;
+		Tree tree = rebuild.tree;
+		tree.annotate(context.annotations, rebuild.results, context.getJCas().getDocumentText().length());
+
+		Update update = new Update(context.getJCas(), rebuild.copied);
+		if (previous == null) {
+			update.changes.add(new Change(0, 0, 0, tree.length));
+			update.outsideChanged = true;
+		} else {
+			if (!previous.isAnnotated(previous.root) || !tree.isAnnotated(tree.root)) {
+				if (previous.hash[previous.root] != tree.hash[tree.root])
+					update.changes.add(new Change(0, previous.length, 0, tree.length));
+			} else
+				new Diff(previous, tree, update.changes, null).compare(previous.root, tree.root);
+			update.outsideChanged = (tree.outside != previous.outside);
+		}
+		previous = tree;
+		previousJCas = context.getJCas();
+		return update;
+	}
+
+	/**
+	 * Reads one version, and copies the annotations of the subtrees that are
+	 * unchanged since the previous version
+	 */
+	class Rebuild implements ReaderContext.Reuse {
+		final ReaderContext<D> context;
+
+		Tree tree = null;
+
+		Visitor visitor = null;
+
+		/**
+		 * For each node of the new version, the position of the same subtree in
+		 * the previous version if it is copied, otherwise -1
+		 */
+		int[] carried = null;
+
+		/**
+		 * The annotated elements in copied subtrees, with their position in the
+		 * previous version
+		 */
+		final Map<Element, Integer> positions = new IdentityHashMap<Element, Integer>();
+
+		/**
+		 * The applications of reusable rules in the new version
+		 */
+		final Map<Element, Results> results = new IdentityHashMap<Element, Results>();
+
+		CasCopier copier = null;
+
+		int copied = 0;
+
+		/**
+		 * Whether the copied element annotations get a new order and selector
+		 */
+		final boolean order, selector;
+
+		Rebuild(JCas jcas) {
+			this.context = profile.newContext(jcas);
+			this.order = profile.getXmlElementFeatures().contains(XmlElementFeature.ORDER);
+			this.selector = profile.getXmlElementFeatures().contains(XmlElementFeature.SELECTOR);
+			context.reuse = this;
+		}
+
+		@Override
+		public NodeFilter filter(Document document, Element root, Visitor visitor) {
+			this.visitor = visitor;
+			tree = new Tree(document, root);
+			if (previous == null || profile.applyRuleHook)
+				return visitor.asFilter();
+			carried = new int[tree.hash.length];
+			Arrays.fill(carried, -1);
+			if (previous.isAnnotated(previous.root) && tree.element[tree.root])
+				new Diff(previous, tree, null, carried).compare(previous.root, tree.root);
+			copier = new CasCopier(previousJCas.getCas(), context.getJCas().getCas());
+
+			final NodeFilter filter = visitor.asFilter();
+			return new NodeFilter() {
+				int position = tree.root;
+
+				@Override
+				public FilterResult head(Node node, int depth) {
+					int p = position;
+					if (carried[p] >= 0) {
+						carry(carried[p], p);
+						position += tree.size[p];
+						return FilterResult.SKIP_ENTIRELY;
+					}
+					FilterResult result = filter.head(node, depth);
+					position += (result == FilterResult.SKIP_ENTIRELY ? tree.size[p] : 1);
+					return result;
+				}
+
+				@Override
+				public FilterResult tail(Node node, int depth) {
+					return filter.tail(node, depth);
+				}
+			};
+		}
+
+		/**
+		 * Adds the text of an unchanged subtree, and copies its element
+		 * annotations.
+		 *
+		 * @param o The position of the subtree in the previous version
+		 * @param n The position of the subtree in the new version
+		 */
+		void carry(int o, int n) {
+			int offset = visitor.builder.getPosition() - previous.begin[o];
+			int index = visitor.skipSubtree((Element) tree.nodes.get(n),
+					previousJCas.getDocumentText().substring(previous.begin[o], previous.end[o]));
+			int indexDelta = index - previous.annotation[o].getIndex();
+			int depthDelta = visitor.level - previous.annotation[o].getDepth();
+			// the visitor creates the annotations in the tail of each node, the copies
+			// are created in the same order
+			int[] stack = new int[16];
+			int top = 0;
+			for (int k = 0; k < tree.size[n]; k++) {
+				while (top > 0 && k >= stack[top - 1] + tree.size[n + stack[top - 1]])
+					copyElement(o, n, stack[--top], offset, indexDelta, depthDelta);
+				if (top == stack.length)
+					stack = Arrays.copyOf(stack, 2 * top);
+				stack[top++] = k;
+			}
+			while (top > 0)
+				copyElement(o, n, stack[--top], offset, indexDelta, depthDelta);
+		}
+
+		/**
+		 * Copies the element annotation of a node in an unchanged subtree.
+		 *
+		 * @param o The position of the subtree in the previous version
+		 * @param n The position of the subtree in the new version
+		 * @param k The position of the node within the subtree
+		 */
+		void copyElement(int o, int n, int k, int offset, int indexDelta, int depthDelta) {
+			XMLElement old = previous.annotation[o + k];
+			if (old != null) {
+				Element elm = (Element) tree.nodes.get(n + k);
+				XMLElement annotation = copy(old, offset);
+				if (order) {
+					annotation.setIndex(old.getIndex() + indexDelta);
+					annotation.setDepth(old.getDepth() + depthDelta);
+				}
+				// the selector depends on the siblings of the ancestors
+				if (selector)
+					annotation.setSelector(visitor.getSelector(elm));
+				annotation.addToIndexes();
+				visitor.register(elm, annotation);
+				positions.put(elm, o + k);
+			}
+		}
+
+		<T extends Annotation> T copy(T annotation, int offset) {
+			T copy = copier.copyFs(annotation);
+			copy.setBegin(annotation.getBegin() + offset);
+			copy.setEnd(annotation.getEnd() + offset);
+			copied++;
+			return copy;
+		}
+
+		@Override
+		public boolean reuse(int index, Element element) {
+			if (index < 0 || !reusable[index])
+				return false;
+			Integer o = positions.get(element);
+			if (o == null)
+				return false;
+			Results old = previous.results[o];
+			if (old == null || !old.contains(index))
+				// the selector of the rule may depend on the context
+				return false;
+			int offset = visitor.getAnnotationMap().get(element).getBegin() - previous.begin[o];
+			for (int k = 0; k < old.size; k++)
+				if (old.rules[k] == index) {
+					Annotation annotation = old.annotations[k];
+					if (annotation != null) {
+						annotation = copy(annotation, offset);
+						annotation.addToIndexes();
+					}
+					applied(index, element, annotation);
+				}
+			return true;
+		}
+
+		@Override
+		public void applied(int index, Element element, TOP annotation) {
+			if (index < 0 || !reusable[index])
+				return;
+			results.computeIfAbsent(element, e -> new Results()).add(index, (Annotation) annotation);
+		}
+	}
+
+	/**
+	 * The applications of reusable rules on one element: The position of each
+	 * rule, and the annotation it has created or null
+	 */
+	static class Results {
+		int[] rules = new int[2];
+		Annotation[] annotations = new Annotation[2];
+		int size = 0;
+
+		void add(int rule, Annotation annotation) {
+			if (size == rules.length) {
+				rules = Arrays.copyOf(rules, 2 * size);
+				annotations = Arrays.copyOf(annotations, 2 * size);
+			}
+			rules[size] = rule;
+			annotations[size++] = annotation;
+		}
+
+		boolean contains(int rule) {
+			for (int k = 0; k < size; k++)
+				if (rules[k] == rule)
+					return true;
+			return false;
+		}
+	}
+
+	/**
+	 * The summary of a version: All nodes of the document in document order,
+	 * with the hash of their subtree, and their annotations after reading.
+	 */
+	static class Tree {
+
+		/**
+		 * The hash of each subtree, from the tag name, the attributes and the
+		 * hashes of the child nodes, or from the text
+		 */
+		final long[] hash;
+
+		/**
+		 * The hash of the tag name and the attributes of elements
+		 */
+		final long[] head;
+
+		final boolean[] element;
+
+		/**
+		 * Whether a subtree contains an XML declaration. Their annotations are
+		 * not copied, such subtrees are always rebuilt.
+		 */
+		final boolean[] declarations;
+
+		/**
+		 * The position of the parent, and the number of nodes in the subtree
+		 */
+		final int[] parent, size;
+
+		/**
+		 * The offsets of the element annotations, -1 if not annotated
+		 */
+		final int[] begin, end;
+
+		/**
+		 * The element annotations, and the results of reusable rules, mostly
+		 * null
+		 */
+		final XMLElement[] annotation;
+
+		final Results[] results;
+
+		/**
+		 * The values of <code>xml:id</code>, mostly null
+		 */
+		final String[] ids;
+
+		/**
+		 * The position of the text root
+		 */
+		final int root;
+
+		/**
+		 * The hash of the document without the text root
+		 */
+		final long outside;
+
+		/**
+		 * The length of the text
+		 */
+		int length = 0;
+
+		/**
+		 * The nodes, until the annotations have been added
+		 */
+		List<Node> nodes;
+
+		Tree(Node document, Element textRoot) {
+			Nodes collector = new Nodes();
+			document.traverse(collector);
+			nodes = collector.nodes;
+			int n = nodes.size();
+			parent = Arrays.copyOf(collector.parent, n);
+			size = Arrays.copyOf(collector.size, n);
+			hash = new long[n];
+			head = new long[n];
+			element = new boolean[n];
+			declarations = new boolean[n];
+			begin = new int[n];
+			end = new int[n];
+			annotation = new XMLElement[n];
+			results = new Results[n];
+			ids = new String[n];
+			Arrays.fill(begin, -1);
+			Arrays.fill(end, -1);
+			int rootPosition = 0;
+			// children come after their parent, their hashes are computed first
+			for (int i = n - 1; i >= 0; i--) {
+				Node node = nodes.get(i);
+				if (node instanceof TextNode)
+					hash[i] = mix(1L, hash(((TextNode) node).getWholeText()));
+				else if (node instanceof Element) {
+					Element elm = (Element) node;
+					element[i] = true;
+					long h = mix(2L, hash(elm.tagName()));
+					for (Attribute attribute : elm.attributes())
+						h = mix(mix(h, hash(attribute.getKey())), hash(attribute.getValue()));
+					head[i] = h;
+					for (int c = i + 1; c < i + size[i]; c += size[c]) {
+						h = mix(h, hash[c]);
+						declarations[i] |= declarations[c];
+					}
+					hash[i] = h;
+					if (elm.hasAttr("xml:id"))
+						ids[i] = elm.attr("xml:id");
+					if (elm == textRoot)
+						rootPosition = i;
+				} else {
+					hash[i] = mix(3L, hash(node.outerHtml()));
+					declarations[i] = (node instanceof XmlDeclaration);
+				}
+			}
+			root = rootPosition;
+
+			long h = 0L;
+			for (int node = root; parent[node] >= 0; node = parent[node]) {
+				int p = parent[node];
+				long ph = head[p];
+				for (int c = p + 1; c < p + size[p]; c += size[c])
+					ph = mix(ph, c == node ? h : hash[c]);
+				h = ph;
+			}
+			outside = h;
+		}
+
+		/**
+		 * Adds the annotations after reading, and releases the nodes.
+		 */
+		void annotate(Map<Element, XMLElement> annotations, Map<Element, Results> applications, int length) {
+			this.length = length;
+			for (int i = 0; i < nodes.size(); i++) {
+				if (!element[i])
+					continue;
+				Element elm = (Element) nodes.get(i);
+				annotation[i] = annotations.get(elm);
+				if (annotation[i] != null) {
+					begin[i] = annotation[i].getBegin();
+					end[i] = annotation[i].getEnd();
+				}
+				results[i] = applications.get(elm);
+			}
+			nodes = null;
+		}
+
+		/**
+		 * Collects the nodes in document order, with their parents and the sizes
+		 * of their subtrees
+		 */
+		static class Nodes implements NodeVisitor {
+			final List<Node> nodes = new ArrayList<Node>();
+			int[] parent = new int[64], size = new int[64];
+			int[] stack = new int[16];
+			int top = 0;
+
+			@Override
+			public void head(Node node, int depth) {
+				int i = nodes.size();
+				if (i == parent.length) {
+					parent = Arrays.copyOf(parent, 2 * i);
+					size = Arrays.copyOf(size, 2 * i);
+				}
+				parent[i] = (top == 0 ? -1 : stack[top - 1]);
+				nodes.add(node);
+				if (top == stack.length)
+					stack = Arrays.copyOf(stack, 2 * top);
+				stack[top++] = i;
+			}
+
+			@Override
+			public void tail(Node node, int depth) {
+				int i = stack[--top];
+				size[i] = nodes.size() - i;
+			}
+		}
+
+		boolean isAnnotated(int i) {
+			return begin[i] >= 0;
+		}
+
+		/**
+		 * @return The positions of the children of a node
+		 */
+		int[] children(int i) {
+			int count = 0;
+			for (int c = i + 1; c < i + size[i]; c += size[c])
+				count++;
+			int[] children = new int[count];
+			count = 0;
+			for (int c = i + 1; c < i + size[i]; c += size[c])
+				children[count++] = c;
+			return children;
+		}
+	}
+
+	static long hash(String s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++)
+			h = (h ^ s.charAt(i)) * 0x100000001b3L;
+		return h;
+	}
+
+	static long mix(long h, long v) {
+		h = (h * 0x9E3779B97F4A7C15L) ^ v;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Compares two versions of a tree. Before reading the new version, the diff
+	 * collects the unchanged subtrees whose annotations can be copied. After
+	 * reading, it collects the changed regions.
+	 */
+	static class Diff {
+		final Tree a, b;
+		final List<Change> changes;
+		final int[] carried;
+
+		/**
+		 * @param changes The list for the changed regions, or null before reading
+		 * @param carried The array for the unchanged subtrees, or null after
+		 *                reading
+		 */
+		Diff(Tree a, Tree b, List<Change> changes, int[] carried) {
+			this.a = a;
+			this.b = b;
+			this.changes = changes;
+			this.carried = carried;
+		}
+
+		/**
+		 * Compares two elements that are both annotated.
+		 */
+		void compare(int oldElement, int newElement) {
+			if (a.hash[oldElement] == b.hash[newElement]) {
+				carry(oldElement, newElement);
+				return;
+			}
+			int[] ac = a.children(oldElement), bc = b.children(newElement);
+			if (a.head[oldElement] != b.head[newElement]) {
+				// attributes or tag changed, the element is reported as a whole
+				changed(oldElement, ac, 0, ac.length, newElement, bc, 0, bc.length);
+				return;
+			}
+			int prefix = 0;
+			while (prefix < ac.length && prefix < bc.length && same(ac[prefix], bc[prefix])) {
+				carry(ac[prefix], bc[prefix]);
+				prefix++;
+			}
+			int ae = ac.length, be = bc.length;
+			while (ae > prefix && be > prefix && same(ac[ae - 1], bc[be - 1])) {
+				ae--;
+				be--;
+				carry(ac[ae], bc[be]);
+			}
+			if (ae == prefix && be == prefix)
+				return;
+
+			// align the remaining children on anchors with xml:id
+			Map<String, Integer> anchors = new HashMap<String, Integer>();
+			for (int j = prefix; j < be; j++)
+				if (b.ids[bc[j]] != null)
+					anchors.put(b.ids[bc[j]], j);
+			int i0 = prefix, j0 = prefix;
+			for (int i = prefix; i < ae; i++) {
+				if (a.ids[ac[i]] == null)
+					continue;
+				Integer j = anchors.get(a.ids[ac[i]]);
+				if (j == null || j < j0)
+					continue;
+				segment(oldElement, ac, i0, i, newElement, bc, j0, j);
+				pair(oldElement, ac, i, newElement, bc, j);
+				i0 = i + 1;
+				j0 = j + 1;
+			}
+			segment(oldElement, ac, i0, ae, newElement, bc, j0, be);
+		}
+
+		/**
+		 * Handles a range of children without anchors. If both contain a single
+		 * element, the elements are compared recursively.
+		 */
+		void segment(int oldParent, int[] ac, int ab, int ae, int newParent, int[] bc, int bb, int be) {
+			if (ab == ae && bb == be)
+				return;
+			if (ae - ab == 1 && be - bb == 1 && a.element[ac[ab]] && b.element[bc[bb]])
+				pair(oldParent, ac, ab, newParent, bc, bb);
+			else
+				changed(oldParent, ac, ab, ae, newParent, bc, bb, be);
+		}
+
+		void pair(int oldParent, int[] ac, int i, int newParent, int[] bc, int j) {
+			// before reading, an element is annotated if it has been annotated in the
+			// previous version, since the ignore function only depends on the element
+			if (a.isAnnotated(ac[i]) && (carried == null ? b.isAnnotated(bc[j]) : b.element[bc[j]]))
+				compare(ac[i], bc[j]);
+			else if (!same(ac[i], bc[j]))
+				changed(oldParent, ac, i, i + 1, newParent, bc, j, j + 1);
+		}
+
+		/**
+		 * Marks an unchanged subtree to be copied, if it is annotated and its
+		 * annotations are known.
+		 */
+		void carry(int oldNode, int newNode) {
+			if (carried != null && a.isAnnotated(oldNode) && !a.declarations[oldNode])
+				carried[newNode] = oldNode;
+		}
+
+		/**
+		 * Reports the children of two elements as changed. The region extends from
+		 * the end of the preceding annotated sibling (or the begin of the parent) to
+		 * the begin of the following annotated sibling (or the end of the parent).
+		 */
+		void changed(int oldParent, int[] ac, int ab, int ae, int newParent, int[] bc, int bb, int be) {
+			if (changes != null)
+				changes.add(new Change(before(a, oldParent, ac, ab), after(a, oldParent, ac, ae),
+						before(b, newParent, bc, bb), after(b, newParent, bc, be)));
+		}
+
+		boolean same(int oldNode, int newNode) {
+			return a.hash[oldNode] == b.hash[newNode];
+		}
+
+		static int before(Tree tree, int parent, int[] children, int index) {
+			for (int k = index - 1; k >= 0; k--)
+				if (tree.isAnnotated(children[k]))
+					return tree.end[children[k]];
+			return tree.begin[parent];
+		}
+
+		static int after(Tree tree, int parent, int[] children, int index) {
+			for (int k = index; k < children.length; k++)
+				if (tree.isAnnotated(children[k]))
+					return tree.begin[children[k]];
+			return tree.end[parent];
+		}
+	}
+
+	/**
+	 * A region that differs between two versions, with offsets in both
+	 */
+	public static class Change {
+		final int oldBegin, oldEnd, begin, end;
+
+		Change(int oldBegin, int oldEnd, int begin, int end) {
+			this.oldBegin = oldBegin;
+			this.oldEnd = oldEnd;
+			this.begin = begin;
+			this.end = end;
+		}
+
+		/**
+		 * @return The begin of the region in the previous version
+		 */
+		public int getOldBegin() {
+			return oldBegin;
+		}
+
+		/**
+		 * @return The end of the region in the previous version
+		 */
+		public int getOldEnd() {
+			return oldEnd;
+		}
+
+		/**
+		 * @return The begin of the region in the new version
+		 */
+		public int getBegin() {
+			return begin;
+		}
+
+		/**
+		 * @return The end of the region in the new version
+		 */
+		public int getEnd() {
+			return end;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + oldBegin + "," + oldEnd + "] -> [" + begin + "," + end + "]";
+		}
+	}
+
+	/**
+	 * The result of reading a new version
+	 */
+	public static class Update {
+		final JCas jcas;
+
+		final List<Change> changes = new ArrayList<Change>();
+
+		boolean outsideChanged = false;
+
+		final int copied;
+
+		Update(JCas jcas, int copied) {
+			this.jcas = jcas;
+			this.copied = copied;
+		}
+
+		/**
+		 * @return The JCas with the new version
+		 */
+		public JCas getJCas() {
+			return jcas;
+		}
+
+		/**
+		 * @return The changed regions in document order, empty if the text and the
+		 *         elements within the text root are unchanged
+		 */
+		public List<Change> getChanges() {
+			return Collections.unmodifiableList(changes);
+		}
+
+		/**
+		 * Whether the XML outside of the text root has changed (e.g., the TEI
+		 * header). This can affect rules and the document meta data even if no text
+		 * has changed.
+		 *
+		 * @return a boolean
+		 */
+		public boolean isOutsideChanged() {
+			return outsideChanged;
+		}
+
+		/**
+		 * @return The number of annotations that have been copied from the
+		 *         previous version instead of being created
+		 */
+		public int getCopied() {
+			return copied;
+		}
+
+		/**
+		 * Maps an offset of the previous version to the new version.
+		 *
+		 * @param oldOffset An offset in the previous version
+		 * @return The corresponding offset in the new version, or -1 if the offset
+		 *         lies within a changed region
+		 */
+		public int map(int oldOffset) {
+			int delta = 0;
+			for (Change change : changes) {
+				if (oldOffset < change.oldBegin)
+					break;
+				if (oldOffset > change.oldBegin && oldOffset < change.oldEnd)
+					return -1;
+				if (oldOffset == change.oldBegin)
+					return change.begin;
+				if (oldOffset >= change.oldEnd)
+					delta = change.end - change.oldEnd;
+			}
+			return oldOffset + delta;
+		}
+	}
+}
@@ -1,7 +1,18 @@
 package de.unistuttgart.ims.uima.io.xml;
 
+import java.io.IOException;
+
 import org.apache.uima.jcas.tcas.Annotation;
 
+/**
+ * Renders annotations as inline tags. {@link GenericInlineWriter} calls the
+ * <code>append</code> methods, which by default append the strings returned
+ * by the <code>get</code> methods. Factories that write many tags should
+ * override them to append the parts of a tag directly, without creating a
+ * string for each tag.
+ *
+ * @param <S> The annotation class
+ */
 public interface InlineTagFactory<S extends Annotation> {
 
 	String getBeginTag(S anno);
@@ -9,4 +20,40 @@ public interface InlineTagFactory<S extends Annotation> {
 	String getEndTag(S anno);
 
 	String getEmptyTag(S anno);
+
+	/**
+	 * Appends the begin tag of an annotation.
+	 * 
+	 * @param anno   The annotation
+	 * @param target The target
+	 * @throws IOException If the target errors
+	 * @since 2.1.0
+	 */
+	default void appendBeginTag(S anno, Appendable target) throws IOException {
+		target.append(getBeginTag(anno));
+	}
+
+	/**
+	 * Appends the end tag of an annotation.
+	 * 
+	 * @param anno   The annotation
+	 * @param target The target
+	 * @throws IOException If the target errors
+	 * @since 2.1.0
+	 */
+	default void appendEndTag(S anno, Appendable target) throws IOException {
+		target.append(getEndTag(anno));
+	}
+
+	/**
+	 * Appends the empty tag of an annotation.
+	 * 
+	 * @param anno   The annotation
+	 * @param target The target
+	 * @throws IOException If the target errors
+	 * @since 2.1.0
+	 */
+	default void appendEmptyTag(S anno, Appendable target) throws IOException {
+		target.append(getEmptyTag(anno));
+	}
 }
@@ -0,0 +1,93 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+
+/**
+ * A bounded pool of JCas objects that share one type system. The type system
+ * is resolved only once, and JCas objects are created lazily, up to the size of
+ * the pool. Released objects are reset and handed out again.
+ *
+ * @since 2.1.0
+ */
+public class JCasPool {
+
+	final int size;
+
+	final Semaphore permits;
+
+	final ConcurrentLinkedQueue<JCas> free = new ConcurrentLinkedQueue<JCas>();
+
+	final TypeSystemDescription typeSystemDescription;
+
+	/**
+	 * Creates a pool for the type system found on the class path.
+	 *
+	 * @param size The maximal number of JCas objects
+	 * @throws UIMAException If the type system can't be resolved
+	 */
+	public JCasPool(int size) throws UIMAException {
+		this(size, TypeSystemDescriptionFactory.createTypeSystemDescription());
+	}
+
+	/**
+	 * @param size                  The maximal number of JCas objects
+	 * @param typeSystemDescription The type system used for all JCas objects
+	 */
+	public JCasPool(int size, TypeSystemDescription typeSystemDescription) {
+		this.size = size;
+		this.permits = new Semaphore(size, true);
+		this.typeSystemDescription = typeSystemDescription;
+	}
+
+	/**
+	 * Takes an empty JCas from the pool. Blocks until one is available.
+	 *
+	 * @return An empty JCas
+	 * @throws InterruptedException If interrupted while waiting
+	 * @throws UIMAException        If a new JCas can't be created
+	 */
+	public JCas acquire() throws InterruptedException, UIMAException {
+		permits.acquire();
+		JCas jcas = free.poll();
+		if (jcas != null)
+			return jcas;
+		try {
+			return JCasFactory.createJCas(typeSystemDescription);
+		} catch (UIMAException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Resets the JCas and returns it to the pool.
+	 *
+	 * @param jcas A JCas that has been taken from this pool
+	 */
+	public void release(JCas jcas) {
+		jcas.reset();
+		free.offer(jcas);
+		permits.release();
+	}
+
+	/**
+	 * Waits until all JCas objects have been returned to the pool.
+	 *
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public void awaitIdle() throws InterruptedException {
+		permits.acquire(size);
+		permits.release(size);
+	}
+
+	public int getSize() {
+		return size;
+	}
+}
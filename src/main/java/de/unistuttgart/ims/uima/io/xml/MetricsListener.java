@@ -0,0 +1,97 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.util.Locale;
+import java.util.function.ObjLongConsumer;
+import java.util.regex.Pattern;
+
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.Rule;
+
+/**
+ * Exports the measurements of a reader as named values, e.g. to a metrics
+ * registry. Each measurement is passed to the sink with a dotted name:
+ *
+ * <ul>
+ * <li><code>gxr.stage.parse.nanos</code> (and likewise for the other
+ * stages)</li>
+ * <li><code>gxr.elements</code>, <code>gxr.textnodes</code></li>
+ * <li><code>gxr.rule.RULE.matches</code>,
+ * <code>gxr.rule.RULE.selector.nanos</code>,
+ * <code>gxr.rule.RULE.callback.nanos</code></li>
+ * </ul>
+ *
+ * By default, <code>RULE</code> is the position of the rule in the reader,
+ * followed by its selector with all characters except letters, digits,
+ * <code>-</code> and <code>_</code> replaced by <code>_</code>, e.g.
+ * <code>gxr.rule.3.TEI_text_div.matches</code> for the fourth rule with the
+ * selector <code>TEI &gt; text div</code>. Subclasses can override
+ * {@link #ruleName(int, Rule)}.
+ *
+ * The values are per document, the sink is expected to accumulate them.
+ *
+ * <pre>
+ * gxr.setListener(new MetricsListener((name, value) -&gt; registry.counter(name).increment(value)));
+ * </pre>
+ *
+ * @since 2.1.0
+ */
+public class MetricsListener implements ReaderListener {
+
+	final String prefix;
+
+	final ObjLongConsumer<String> sink;
+
+	/**
+	 * @param sink Receives the names and values
+	 */
+	public MetricsListener(ObjLongConsumer<String> sink) {
+		this("gxr", sink);
+	}
+
+	/**
+	 * @param prefix The first component of all names
+	 * @param sink   Receives the names and values
+	 */
+	public MetricsListener(String prefix, ObjLongConsumer<String> sink) {
+		this.prefix = prefix;
+		this.sink = sink;
+	}
+
+	@Override
+	public void stage(Stage stage, long nanos) {
+		sink.accept(prefix + ".stage." + stage.name().toLowerCase(Locale.ROOT) + ".nanos", nanos);
+	}
+
+	@Override
+	public void nodes(int elements, int textNodes) {
+		sink.accept(prefix + ".elements", elements);
+		sink.accept(prefix + ".textnodes", textNodes);
+	}
+
+	@Override
+	public void rule(int position, Rule<?> rule, int matches, long selectorNanos, long callbackNanos) {
+		String name = prefix + ".rule." + ruleName(position, rule);
+		sink.accept(name + ".matches", matches);
+		sink.accept(name + ".selector.nanos", selectorNanos);
+		sink.accept(name + ".callback.nanos", callbackNanos);
+	}
+
+	/**
+	 * Names a rule in the metric names. The name must be unique among the rules
+	 * of a reader.
+	 *
+	 * @param position The position of the rule in the profile
+	 * @param rule     The rule
+	 * @return The name component of the rule
+	 */
+	protected String ruleName(int position, Rule<?> rule) {
+		String selector = INVALID.matcher(rule.getSelector()).replaceAll("_");
+		return position + "." + UNDERSCORES.matcher(selector).replaceAll("");
+	}
+
+	/**
+	 * Runs of characters that are not allowed in metric names
+	 */
+	private static final Pattern INVALID = Pattern.compile("[^A-Za-z0-9_-]+");
+
+	private static final Pattern UNDERSCORES = Pattern.compile("^_+|_+$");
+}
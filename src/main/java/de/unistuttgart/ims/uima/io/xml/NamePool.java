@@ -0,0 +1,177 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, thread-safe pool of canonical strings for tag names, attribute
+ * names and class names. A corpus usually has only a few dozen distinct names,
+ * but every document creates its own copies of them. If the names are taken
+ * from a pool, all annotations of all documents share the same string objects.
+ *
+ * The pool accepts up to {@link #getCapacity()} names of at most
+ * {@link #getMaxLength()} characters. Once it is full, other names are returned
+ * as they are, such that unexpected input (e.g., unique values in the
+ * <code>type</code> attribute) can't exhaust the memory. Names are never
+ * removed, unless the pool is cleared.
+ *
+ * The memory saved by the pool is estimated from the number and length of the
+ * copies that have been replaced by pooled names, see
+ * {@link #getSavedBytes()}.
+ *
+ * Each reader and each tag factory has its own pool by default, such that
+ * names and counters are released along with the reader. Readers that process
+ * the same corpus can share a pool with
+ * {@link GenericXmlReader#setNamePool(NamePool)}, e.g. {@link #SHARED}.
+ *
+ * @since 2.1.0
+ */
+public class NamePool {
+
+	/**
+	 * The limits of pools created with {@link #NamePool()}
+	 */
+	public static final int DEFAULT_CAPACITY = 4096, DEFAULT_MAX_LENGTH = 64;
+
+	/**
+	 * A pool for the whole JVM, which is only used if it is set explicitly. Its
+	 * names are kept until it is cleared, and its counters include all readers
+	 * that use it.
+	 */
+	public static final NamePool SHARED = new NamePool();
+
+	final int capacity;
+
+	final int maxLength;
+
+	final ConcurrentMap<String, String> names;
+
+	final LongAdder hits = new LongAdder(), misses = new LongAdder(), savedBytes = new LongAdder();
+
+	/**
+	 * Creates a pool with {@link #DEFAULT_CAPACITY} names of at most
+	 * {@link #DEFAULT_MAX_LENGTH} characters.
+	 */
+	public NamePool() {
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * @param capacity  The maximal number of names
+	 * @param maxLength The maximal length of a name
+	 */
+	public NamePool(int capacity, int maxLength) {
+		this.capacity = capacity;
+		this.maxLength = maxLength;
+		this.names = new ConcurrentHashMap<String, String>(Math.min(capacity, 256));
+	}
+
+	/**
+	 * Returns the canonical instance of a name. If the name is not in the pool
+	 * yet, it is added unless the pool is full or the name is too long.
+	 *
+	 * @param name The name, may be null
+	 * @return An equal string, the canonical instance if there is one
+	 */
+	public String intern(String name) {
+		if (name == null || name.length() > maxLength)
+			return name;
+		String pooled = names.get(name);
+		if (pooled == null) {
+			misses.increment();
+			if (names.size() >= capacity)
+				return name;
+			pooled = names.putIfAbsent(name, name);
+			if (pooled == null)
+				return name;
+		}
+		hits.increment();
+		if (pooled != name)
+			savedBytes.add(sizeOf(name));
+		return pooled;
+	}
+
+	/**
+	 * Removes all names and resets the counters.
+	 */
+	public void clear() {
+		names.clear();
+		hits.reset();
+		misses.reset();
+		savedBytes.reset();
+	}
+
+	/**
+	 * @return The number of names in the pool
+	 */
+	public int getSize() {
+		return names.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * @return The number of lookups that found a pooled name
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return The number of lookups of names that were not pooled yet
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Estimates the memory that has been saved because copies of pooled names
+	 * could be garbage collected. This assumes that each copy would otherwise
+	 * have been kept alive, e.g. by an annotation in a CAS.
+	 *
+	 * @return The estimated number of bytes
+	 */
+	public long getSavedBytes() {
+		return savedBytes.sum();
+	}
+
+	/**
+	 * @return An estimate of the memory used by the pooled names
+	 */
+	public long getRetainedBytes() {
+		long bytes = 0;
+		for (String name : names.keySet())
+			// a map entry with its references
+			bytes += sizeOf(name) + 32;
+		return bytes;
+	}
+
+	/**
+	 * Estimates the size of a string on the heap of a 64 bit JVM with compressed
+	 * references: The string object with its hash, and a char array. Strings in
+	 * newer JVMs are often smaller.
+	 *
+	 * @param s The string
+	 * @return The number of bytes
+	 */
+	static long sizeOf(String s) {
+		return 24 + align(16 + 2L * s.length());
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	@Override
+	public String toString() {
+		return "NamePool[size=" + getSize() + ", hits=" + getHits() + ", misses=" + getMisses() + ", savedBytes="
+				+ getSavedBytes() + "]";
+	}
+}
@@ -0,0 +1,382 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.uima.UIMAException;
+import org.apache.uima.cas.SerialFormat;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+import org.apache.uima.util.CasIOUtils;
+
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.Rule;
+
+/**
+ * An on-disk cache of read documents. The key of a document is the SHA-256
+ * hash of its bytes and of the {@link #fingerprint(ReaderProfile)} of the
+ * profile, the value is the resulting CAS in compressed binary form. If the
+ * same file is read again with the same configuration, the CAS is deserialized
+ * instead of parsing the file and applying the rules. The cache is bounded by
+ * the total size of its files, and the least recently used entries are evicted
+ * first. The access order survives restarts, as it is stored in the
+ * modification times of the files.
+ *
+ * <pre>
+ * ParseCache&lt;DocumentMetaData&gt; cache = new ParseCache&lt;DocumentMetaData&gt;(gxr.compile(), directory, 1L &lt;&lt; 30);
+ * JCas jcas = cache.read(path);
+ * </pre>
+ *
+ * The fingerprint covers the rules, the text root selector, the ignore settings
+ * and all flags, but not the code of rule callbacks and ignore functions. If
+ * they change, the cache needs to be invalidated with
+ * {@link #setVersion(String)}, or by clearing the directory.
+ *
+ * A cache can be shared between threads, and used by a {@link BatchReader}.
+ *
+ * @param <D> The document class
+ * @since 2.1.0
+ */
+public class ParseCache<D extends TOP> {
+
+	private static final Logger logger = LogManager.getLogger(ParseCache.class);
+
+	static final String SUFFIX = ".bin";
+
+	final ReaderProfile<D> profile;
+
+	final Path directory;
+
+	final long maxBytes;
+
+	String version = "";
+
+	byte[] fingerprint;
+
+	/**
+	 * The entries in access order, with their sizes
+	 */
+	final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+	long size = 0;
+
+	int hits = 0, misses = 0;
+
+	/**
+	 * Creates a cache in a directory. Entries from earlier runs are kept.
+	 *
+	 * @param profile   The profile used to read documents that are not in the
+	 *                  cache
+	 * @param directory The directory, which is created if it doesn't exist
+	 * @param maxBytes  The maximal total size of all entries
+	 * @throws IOException If the directory can't be created or listed
+	 */
+	public ParseCache(ReaderProfile<D> profile, Path directory, long maxBytes) throws IOException {
+		this.profile = profile;
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.fingerprint = fingerprint(profile, version);
+		Files.createDirectories(directory);
+
+		// restore the access order of earlier runs
+		List<Path> files = new ArrayList<Path>();
+		try (Stream<Path> stream = Files.list(directory)) {
+			stream.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).forEach(files::add);
+		}
+		Map<Path, FileTime> times = new LinkedHashMap<Path, FileTime>();
+		for (Path file : files)
+			times.put(file, Files.getLastModifiedTime(file));
+		files.sort((a, b) -> times.get(a).compareTo(times.get(b)));
+		for (Path file : files) {
+			long fileSize = Files.size(file);
+			entries.put(file.getFileName().toString(), fileSize);
+			size += fileSize;
+		}
+		evict();
+	}
+
+	/**
+	 * Reads a file into a new JCas, from the cache if possible.
+	 *
+	 * @param path The XML file
+	 * @return The populated JCas object
+	 * @throws IOException   If the file can't be read
+	 * @throws UIMAException If there is an issue with creating the JCas.
+	 */
+	public JCas read(Path path) throws IOException, UIMAException {
+		return read(JCasFactory.createJCas(), path);
+	}
+
+	/**
+	 * Reads a file into an existing, empty JCas, from the cache if possible.
+	 * Large files are memory-mapped.
+	 *
+	 * @param jcas The JCas to populate
+	 * @param path The XML file
+	 * @return The populated JCas object
+	 * @throws IOException If the file can't be read
+	 */
+	public JCas read(JCas jcas, Path path) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if (fileSize >= ReaderContext.MAP_THRESHOLD && fileSize <= Integer.MAX_VALUE)
+				buffer = channel.map(MapMode.READ_ONLY, 0, fileSize);
+			else
+				buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+		}
+		return read(jcas, buffer);
+	}
+
+	/**
+	 * Reads a document into an existing, empty JCas, from the cache if possible.
+	 * The stream is read entirely to compute its hash.
+	 *
+	 * @param jcas      The JCas to populate
+	 * @param xmlStream The stream offering the XML data
+	 * @return The populated JCas object
+	 * @throws IOException If the input stream errors
+	 */
+	public JCas read(JCas jcas, InputStream xmlStream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] b = new byte[8192];
+		int n;
+		while ((n = xmlStream.read(b)) != -1)
+			bytes.write(b, 0, n);
+		return read(jcas, ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	/**
+	 * Reads a document from a buffer into an existing, empty JCas, from the
+	 * cache if possible.
+	 *
+	 * @param jcas   The JCas to populate
+	 * @param buffer The XML data between position and limit
+	 * @return The populated JCas object
+	 * @throws IOException If the data can't be decoded, or the cache can't be
+	 *                     written
+	 */
+	public JCas read(JCas jcas, ByteBuffer buffer) throws IOException {
+		String name = key(buffer) + SUFFIX;
+		Path file = directory.resolve(name);
+		if (touch(name)) {
+			try (InputStream is = Files.newInputStream(file)) {
+				CasIOUtils.load(is, jcas.getCas());
+				synchronized (this) {
+					hits++;
+				}
+				return jcas;
+			} catch (IOException | RuntimeException e) {
+				logger.warn("Could not load cache entry {}, reading the document.", file, e);
+				jcas.reset();
+				remove(name);
+			}
+		}
+
+		profile.read(jcas, buffer);
+		synchronized (this) {
+			misses++;
+		}
+
+		Path tmp = Files.createTempFile(directory, "entry", ".tmp");
+		try {
+			try (OutputStream os = Files.newOutputStream(tmp)) {
+				CasIOUtils.save(jcas.getCas(), os, SerialFormat.COMPRESSED_FILTERED_TSI);
+			}
+			try {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			add(name, Files.size(file));
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		return jcas;
+	}
+
+	/**
+	 * Computes the file name of a document in the cache
+	 */
+	String key(ByteBuffer buffer) {
+		MessageDigest digest = sha256();
+		digest.update(fingerprint);
+		digest.update(buffer.duplicate());
+		return hex(digest.digest());
+	}
+
+	/**
+	 * Marks an entry as used.
+	 *
+	 * @return Whether the entry exists
+	 */
+	synchronized boolean touch(String name) {
+		if (entries.get(name) == null)
+			return false;
+		try {
+			Files.setLastModifiedTime(directory.resolve(name), FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			// the access order is lost after a restart
+			logger.debug("Could not touch {}.", name, e);
+		}
+		return true;
+	}
+
+	synchronized void add(String name, long fileSize) throws IOException {
+		Long previous = entries.put(name, fileSize);
+		size += fileSize - (previous == null ? 0 : previous);
+		evict();
+	}
+
+	synchronized void remove(String name) throws IOException {
+		Long previous = entries.remove(name);
+		if (previous != null)
+			size -= previous;
+		Files.deleteIfExists(directory.resolve(name));
+	}
+
+	/**
+	 * Removes the least recently used entries until the cache fits into its
+	 * bounds
+	 */
+	synchronized void evict() throws IOException {
+		Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+		while (size > maxBytes && iterator.hasNext()) {
+			Map.Entry<String, Long> entry = iterator.next();
+			Files.deleteIfExists(directory.resolve(entry.getKey()));
+			size -= entry.getValue();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Removes all entries.
+	 *
+	 * @throws IOException If a file can't be deleted
+	 */
+	public synchronized void clear() throws IOException {
+		for (String name : entries.keySet())
+			Files.deleteIfExists(directory.resolve(name));
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * Computes a fingerprint of the configuration of a profile: The rules, the
+	 * text root selector, the ignore settings and the flags. Callbacks and ignore
+	 * functions are only recorded as present or absent.
+	 *
+	 * @param profile The profile
+	 * @return A SHA-256 hash
+	 */
+	public static byte[] fingerprint(ReaderProfile<?> profile) {
+		return fingerprint(profile, "");
+	}
+
+	static byte[] fingerprint(ReaderProfile<?> profile, String version) {
+		StringBuilder b = new StringBuilder();
+		b.append("version=").append(version).append('\n');
+		b.append("document=").append(profile.getDocumentClass().getName()).append('\n');
+		for (Rule<?> rule : profile.getRules())
+			b.append("rule=").append(rule.getSelector()).append('\t').append(rule.getTargetClass().getName())
+					.append('\t').append(rule.isGlobal()).append('\t').append(rule.isUnique()).append('\t')
+					.append(rule.getCallback() != null).append('\n');
+		b.append("textRoot=").append(profile.getTextRootSelector()).append('\n');
+		if (profile.ignore instanceof IgnoreFilter) {
+			b.append("ignoredTags=").append(new TreeSet<String>(((IgnoreFilter) profile.ignore).tags)).append('\n');
+			b.append("ignoredAttributes=").append(new TreeSet<String>(((IgnoreFilter) profile.ignore).attributes))
+					.append('\n');
+		}
+		b.append("ignoreFunction=").append(profile.getIgnoreFunction() != null).append('\n');
+		b.append("ignoreMode=").append(profile.getIgnoreMode()).append('\n');
+		b.append("preserveWhitespace=").append(profile.isPreserveWhitespace()).append('\n');
+		b.append("skipEmptyElements=").append(profile.isSkipEmptyElements()).append('\n');
+		b.append("streaming=").append(profile.isStreaming()).append('\n');
+		b.append("features=").append(profile.getXmlElementFeatures()).append('\n');
+		return sha256().digest(b.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform supports SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String hex(byte[] bytes) {
+		StringBuilder b = new StringBuilder(2 * bytes.length);
+		for (byte x : bytes)
+			b.append(Character.forDigit((x >> 4) & 0xF, 16)).append(Character.forDigit(x & 0xF, 16));
+		return b.toString();
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * Sets a version that is part of all keys. Changing the version invalidates
+	 * all entries, which is needed if callbacks or the ignore function have
+	 * changed. Entries of other versions are evicted eventually.
+	 *
+	 * @param version The version
+	 */
+	public void setVersion(String version) {
+		this.version = version;
+		this.fingerprint = fingerprint(profile, version);
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return The total size of all entries
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return The number of documents that have been loaded from the cache
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return The number of documents that have been read and stored
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+}
@@ -0,0 +1,589 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.XmlDeclaration;
+import org.jsoup.parser.Parser;
+import org.jsoup.select.NodeFilter;
+
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.IgnoreMode;
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.Rule;
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+import de.unistuttgart.ims.uima.io.xml.type.XMLParsingDescription;
+
+/**
+ * The state of reading a single document with a {@link ReaderProfile}: The
+ * target JCas, the DOM and the registry of XML ids. A context is short-lived
+ * and must not be shared between threads.
+ *
+ * @param <D> The document class
+ * @since 2.1.0
+ */
+public class ReaderContext<D extends TOP> {
+
+	private static final Logger logger = LogManager.getLogger(GenericXmlReader.class);
+
+	/**
+	 * Files of at least this size are memory-mapped by {@link #read(Path)}
+	 */
+	public static final long MAP_THRESHOLD = 1 << 20;
+
+	/**
+	 * The number of callbacks that are run as one task on the callback pool
+	 */
+	static final int CALLBACK_BATCH = 32;
+
+	final ReaderProfile<D> profile;
+
+	final JCas jcas;
+
+	/**
+	 * The DOM, null in streaming mode
+	 */
+	Document doc = null;
+
+	/**
+	 * The text root and the annotations of all elements, null in streaming mode
+	 */
+	Element root = null;
+
+	Map<Element, XMLElement> annotations = null;
+
+	/**
+	 * The detected encoding of the input
+	 */
+	Charset charset = null;
+
+	Map<String, Map.Entry<Element, FeatureStructure>> idRegistry = new HashMap<String, Map.Entry<Element, FeatureStructure>>();
+
+	final ReaderListener listener;
+
+	/**
+	 * Whether a listener is set. If not, the arrays below are null and no time is
+	 * measured.
+	 */
+	final boolean measured;
+
+	/**
+	 * Per rule (in the order of the profile): Number of matches, and time spent in
+	 * selectors and callbacks
+	 */
+	int[] ruleMatches = null;
+
+	long[] selectorNanos = null;
+
+	long[] callbackNanos = null;
+
+	/**
+	 * The structural index, created on demand
+	 */
+	StructuralIndex structuralIndex = null;
+
+	/**
+	 * Reuses the annotations of a previous version of the document, or null
+	 */
+	Reuse reuse = null;
+
+	ReaderContext(ReaderProfile<D> profile, JCas jcas) {
+		this.profile = profile;
+		this.jcas = jcas;
+		this.listener = profile.getListener();
+		this.measured = listener != ReaderListener.NONE;
+		if (measured) {
+			ruleMatches = new int[profile.rules.size()];
+			selectorNanos = new long[profile.rules.size()];
+			callbackNanos = new long[profile.rules.size()];
+		}
+		if (profile.hooks != null)
+			// the deprecated hooks of the reader work on its current context
+			profile.hooks.context = this;
+	}
+
+	/**
+	 * Reads a file. Files of at least {@link #MAP_THRESHOLD} bytes are
+	 * memory-mapped, smaller files are read through a buffered stream.
+	 *
+	 * @param path The XML file
+	 * @return The populated JCas object
+	 * @throws IOException If the file can't be read
+	 * @since 2.1.0
+	 */
+	public JCas read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size >= MAP_THRESHOLD && size <= Integer.MAX_VALUE)
+				// the mapping stays valid after closing the channel
+				return read(channel.map(MapMode.READ_ONLY, 0, size));
+		}
+		try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+			return read(is);
+		}
+	}
+
+	/**
+	 * Reads the bytes between position and limit of the buffer, without copying
+	 * them. The position of the buffer is not changed.
+	 *
+	 * @param buffer The XML data
+	 * @return The populated JCas object
+	 * @throws IOException If the data can't be decoded
+	 * @since 2.1.0
+	 */
+	public JCas read(ByteBuffer buffer) throws IOException {
+		return read(new ByteBufferInputStream(buffer.duplicate()));
+	}
+
+	/**
+	 * Runs the conversion and executes all rules. The encoding is detected from
+	 * the byte order mark or the XML declaration, and defaults to UTF-8.
+	 *
+	 * @param xmlStream The stream offering the XML data
+	 * @return The populated JCas object
+	 * @throws IOException If the input stream errors
+	 */
+	public JCas read(InputStream xmlStream) throws IOException {
+		long start = lap(null, 0L);
+		InputStream in = (xmlStream.markSupported() ? xmlStream : new BufferedInputStream(xmlStream));
+		charset = EncodingDetector.detect(in);
+		// jsoup needs a reader that supports marking
+		Reader reader = new BufferedReader(new InputStreamReader(in, charset));
+		if (profile.isStreaming()) {
+			new StreamingReader<D>(this).read(reader);
+			if (profile.isStructuralIndex())
+				getStructuralIndex();
+			lap(ReaderListener.Stage.READ, start);
+			report();
+			return jcas;
+		}
+
+		// parse the input
+		Document document = Parser.xmlParser().parseInput(reader, "");
+		document.outputSettings().charset(charset);
+		lap(ReaderListener.Stage.PARSE, start);
+		return read(document, start);
+	}
+
+	/**
+	 * Converts a DOM that has already been built, and executes all rules.
+	 *
+	 * @param document The DOM
+	 * @return The populated JCas object
+	 * @since 2.1.0
+	 */
+	public JCas read(Document document) {
+		if (charset == null)
+			charset = document.outputSettings().charset();
+		return read(document, lap(null, 0L));
+	}
+
+	JCas read(Document document, long start) {
+		doc = document;
+		long time = lap(null, 0L);
+
+		// prepare traversing the DOM
+		Visitor vis = new Visitor(jcas, profile.isPreserveWhitespace());
+
+		// set ignore function if needed
+		if (profile.ignore != null)
+			vis.setIgnoreFunction(profile.ignore);
+		vis.setIgnoreSubtrees(profile.getIgnoreMode() == IgnoreMode.SUBTREE);
+		vis.setFeatures(profile.getXmlElementFeatures());
+		vis.setNamePool(profile.namePool);
+
+		// select the root element
+		if (profile.getTextRootSelector() == null)
+			root = doc;
+		else
+			root = doc.select(profile.getTextRootSelector()).first();
+
+		// this populates the JCas, and creates XML annotations
+		root.filter(reuse == null ? vis.asFilter() : reuse.filter(doc, root, vis));
+
+		// closes the CAS
+		vis.getJCas();
+		annotations = vis.getAnnotationMap();
+		time = lap(ReaderListener.Stage.TRAVERSE, time);
+		if (measured)
+			listener.nodes(vis.getElementCount(), vis.getTextNodeCount());
+
+		// process rules
+		if (profile.applyRuleHook)
+			applyRulesWithHook();
+		else {
+			List<List<Element>> matches = profile.ruleMatcher.match(doc, root, vis.getPruned(), selectorNanos);
+			time = lap(ReaderListener.Stage.MATCH, time);
+			if (profile.callbackPool == null)
+				for (int i = 0; i < profile.rules.size(); i++) {
+					Rule<?> mapping = profile.rules.get(i);
+					for (Element elm : matches.get(i))
+						applyRule(elm, annotations.get(elm), mapping, i);
+				}
+			else
+				applyRulesInParallel(matches);
+		}
+		lap(ReaderListener.Stage.APPLY, time);
+
+		// store xml declarations
+		XMLParsingDescription parsingDescription = new XMLParsingDescription(jcas);
+		parsingDescription.setEncoding(charset.name());
+		Node rootNode = doc.root();
+		List<String> declarations = new LinkedList<String>();
+		for (Node topNode : rootNode.childNodes()) {
+			if (topNode instanceof XmlDeclaration) {
+				XmlDeclaration xmlDecl = (XmlDeclaration) topNode;
+				declarations.add(xmlDecl.getWholeDeclaration());
+			}
+		}
+		parsingDescription.setXmlDeclarations(ArrayUtil.toStringArray(jcas, declarations));
+		parsingDescription.addToIndexes();
+		if (profile.isStructuralIndex())
+			getStructuralIndex();
+		lap(ReaderListener.Stage.READ, start);
+		report();
+		return jcas;
+	}
+
+	/**
+	 * Reports the end of a stage to the listener. Does nothing if no listener is
+	 * set.
+	 *
+	 * @param stage The stage that has been completed, or null
+	 * @param start The start time of the stage
+	 * @return The current time, or 0 if no listener is set
+	 */
+	long lap(ReaderListener.Stage stage, long start) {
+		if (!measured)
+			return 0L;
+		long now = System.nanoTime();
+		if (stage != null)
+			listener.stage(stage, now - start);
+		return now;
+	}
+
+	/**
+	 * Reports the rule statistics to the listener
+	 */
+	void report() {
+		if (!measured)
+			return;
+		for (int i = 0; i < profile.rules.size(); i++)
+			listener.rule(i, profile.rules.get(i), ruleMatches[i], selectorNanos[i], callbackNanos[i]);
+	}
+
+	/**
+	 * Applies the rules one by one with the overridden
+	 * {@link GenericXmlReader#applyRule(JCas, Element, Map, Rule)} of the
+	 * reader, as in version 2.0
+	 */
+	void applyRulesWithHook() {
+		Map<String, XMLElement> selectors = new HashMap<String, XMLElement>();
+		for (Map.Entry<Element, XMLElement> entry : annotations.entrySet())
+			selectors.put(entry.getKey().cssSelector(), entry.getValue());
+		for (Rule<?> mapping : profile.rules)
+			profile.hooks.applyRule(jcas, (mapping.isGlobal() ? doc : root), selectors, mapping);
+	}
+
+	/**
+	 * Applies a rule on a single element that has been matched by the rule's
+	 * selector.
+	 *
+	 * @param elm     The matched element
+	 * @param hAnno   The annotation of the element, can be null if the element has
+	 *                not been annotated (i.e., it is ignored or outside of the
+	 *                text root)
+	 * @param mapping The rule
+	 * @param index   The position of the rule in the profile, used for
+	 *                statistics. Can be -1.
+	 */
+	<T extends TOP> void applyRule(Element elm, XMLElement hAnno, Rule<T> mapping, int index) {
+		if (reuse != null && reuse.reuse(index, elm))
+			return;
+		T annotation = createFeatureStructure(elm, hAnno, mapping, index);
+		if (reuse != null)
+			reuse.applied(index, elm, annotation);
+		if (annotation != null && mapping.getCallback() != null)
+			callback(annotation, elm, mapping, index, callbackNanos);
+	}
+
+	/**
+	 * Creates the feature structure for a matched element, without calling the
+	 * callback.
+	 *
+	 * @return The feature structure, or null if the rule is not applied
+	 */
+	<T extends TOP> T createFeatureStructure(Element elm, XMLElement hAnno, Rule<T> mapping, int index) {
+		if (measured && index >= 0)
+			ruleMatches[index]++;
+		if (hAnno == null && (!mapping.isGlobal() || !mapping.isUnique())
+				&& Annotation.class.isAssignableFrom(mapping.getTargetClass())) {
+			// without the XML annotation, we don't know where to put the annotation,
+			// this also applies to global rules that match in ignored subtrees
+			logger.error("Rule {} matches an XML element that has been skipped, it is not applied.", mapping);
+			return null;
+		}
+		if (hAnno == null && profile.ignore != null && !mapping.isGlobal()) {
+			logger.error(
+					"You are about to apply a rule that involves an XML element that has been skipped. If this works, it likely has unintended side effects.");
+		}
+		if (!profile.isSkipEmptyElements() || elm.hasText() || elm.childNodeSize() > 0) {
+			if (profile.hooks != null)
+				return profile.hooks.getFeatureStructure(jcas, hAnno, elm, mapping);
+			return getFeatureStructure(hAnno, elm, mapping);
+		}
+		return null;
+	}
+
+	<T extends TOP> void callback(T annotation, Element elm, Rule<T> mapping, int index, long[] nanos) {
+		if (measured && index >= 0) {
+			long start = System.nanoTime();
+			mapping.getCallback().accept(annotation, elm);
+			nanos[index] += System.nanoTime() - start;
+		} else
+			mapping.getCallback().accept(annotation, elm);
+	}
+
+	/**
+	 * Creates all feature structures in the order of rules and matches, and then
+	 * runs the callbacks on the callback pool. Callbacks of unique rules share
+	 * their feature structure, they are run on this thread in the meantime.
+	 *
+	 * @param matches The matches of each rule
+	 */
+	void applyRulesInParallel(List<List<Element>> matches) {
+		List<Application<?>> parallel = new ArrayList<Application<?>>();
+		List<Application<?>> sequential = new ArrayList<Application<?>>();
+		for (int i = 0; i < profile.rules.size(); i++) {
+			Rule<?> mapping = profile.rules.get(i);
+			for (Element elm : matches.get(i))
+				prepare(elm, annotations.get(elm), mapping, i, mapping.isUnique() ? sequential : parallel);
+		}
+		ForkJoinTask<Void> task = profile.callbackPool.submit(new Callbacks(parallel, 0, parallel.size()));
+		long[] nanos = (measured ? new long[profile.rules.size()] : null);
+		try {
+			for (Application<?> application : sequential)
+				application.run(nanos);
+		} finally {
+			task.join();
+		}
+		if (measured)
+			for (int i = 0; i < nanos.length; i++)
+				callbackNanos[i] += nanos[i];
+	}
+
+	<T extends TOP> void prepare(Element elm, XMLElement hAnno, Rule<T> mapping, int index,
+			List<Application<?>> applications) {
+		if (reuse != null && reuse.reuse(index, elm))
+			return;
+		T annotation = createFeatureStructure(elm, hAnno, mapping, index);
+		if (reuse != null)
+			reuse.applied(index, elm, annotation);
+		if (annotation != null && mapping.getCallback() != null)
+			applications.add(new Application<T>(elm, annotation, mapping, index));
+	}
+
+	/**
+	 * Takes the annotations of unchanged subtrees from a previous version of the
+	 * document, see {@link IncrementalReader}
+	 */
+	interface Reuse {
+		/**
+		 * Called after parsing, before the DOM is traversed.
+		 *
+		 * @param document The DOM
+		 * @param root     The text root
+		 * @param visitor  The visitor that populates the JCas
+		 * @return The filter for the traversal, which skips the reused subtrees
+		 */
+		NodeFilter filter(Document document, Element root, Visitor visitor);
+
+		/**
+		 * Called before a rule is applied. If the results of the rule for the
+		 * element are taken from the previous version, the rule is not applied.
+		 *
+		 * @param index   The position of the rule in the profile, can be -1
+		 * @param element The matched element
+		 * @return True, if the results have been reused
+		 */
+		boolean reuse(int index, Element element);
+
+		/**
+		 * Called after a rule has been applied, before its callback.
+		 *
+		 * @param index      The position of the rule in the profile, can be -1
+		 * @param element    The matched element
+		 * @param annotation The feature structure, or null
+		 */
+		void applied(int index, Element element, TOP annotation);
+	}
+
+	/**
+	 * A callback that is yet to be called
+	 */
+	class Application<T extends TOP> {
+		final Element element;
+		final T annotation;
+		final Rule<T> rule;
+		final int index;
+
+		Application(Element element, T annotation, Rule<T> rule, int index) {
+			this.element = element;
+			this.annotation = annotation;
+			this.rule = rule;
+			this.index = index;
+		}
+
+		void run(long[] nanos) {
+			callback(annotation, element, rule, index, nanos);
+		}
+	}
+
+	/**
+	 * Runs a range of callbacks, splitting it until it is small enough
+	 */
+	@SuppressWarnings("serial")
+	class Callbacks extends RecursiveAction {
+		final List<Application<?>> applications;
+		final int from, to;
+
+		Callbacks(List<Application<?>> applications, int from, int to) {
+			this.applications = applications;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > CALLBACK_BATCH) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Callbacks(applications, from, middle), new Callbacks(applications, middle, to));
+				return;
+			}
+			long[] nanos = (measured ? new long[profile.rules.size()] : null);
+			for (int i = from; i < to; i++)
+				applications.get(i).run(nanos);
+			if (measured)
+				synchronized (callbackNanos) {
+					for (int i = 0; i < nanos.length; i++)
+						callbackNanos[i] += nanos[i];
+				}
+		}
+	}
+
+	<T extends TOP> T getFeatureStructure(XMLElement hAnno, Element elm, Rule<T> mapping) {
+		T annotation = null;
+		if (mapping.isUnique()) {
+			annotation = getOrCreate(jcas, mapping.getTargetClass());
+		} else {
+			annotation = jcas.getCas().createFS(JCasUtil.getType(jcas, mapping.getTargetClass()));
+			jcas.getCas().addFsToIndexes(annotation);
+			if (Annotation.class.isAssignableFrom(mapping.getTargetClass())) {
+				((Annotation) annotation).setBegin(hAnno.getBegin());
+				((Annotation) annotation).setEnd(hAnno.getEnd());
+			}
+
+			if (elm.hasAttr("xml:id") && !exists(elm.attr("xml:id"))) {
+				String id = elm.attr("xml:id");
+				idRegistry.put(id, new AbstractMap.SimpleEntry<Element, FeatureStructure>(elm, annotation));
+			}
+
+		}
+		return annotation;
+	}
+
+	static <T extends TOP> T getOrCreate(JCas jcas, Class<T> targetClass) {
+		if (JCasUtil.exists(jcas, targetClass)) {
+			return JCasUtil.selectSingle(jcas, targetClass);
+		} else {
+			T annotation = jcas.getCas().createFS(JCasUtil.getType(jcas, targetClass));
+			jcas.getCas().addFsToIndexes(annotation);
+			return annotation;
+		}
+	}
+
+	/**
+	 * Retrieves an annotation by XML id
+	 *
+	 * @param id The id
+	 * @return The feature structure
+	 */
+	public Map.Entry<Element, FeatureStructure> getAnnotation(String id) {
+		return idRegistry.get(id);
+	}
+
+	/**
+	 * Checks whether an XML id is defined
+	 *
+	 * @param id The id
+	 * @return a boolean
+	 */
+	public boolean exists(String id) {
+		return idRegistry.containsKey(id);
+	}
+
+	/**
+	 * @return The DOM of the document, or null in streaming mode
+	 */
+	public Document getDocument() {
+		return doc;
+	}
+
+	/**
+	 * @return The encoding of the document that has been read, or null
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Creates the {@link StructuralIndex} of the elements on the first call, and
+	 * returns the same index afterwards. The index should only be requested
+	 * after reading. If {@link GenericXmlReader#setStructuralIndex(boolean)} is
+	 * set, it is created at the end of reading.
+	 *
+	 * @return The structural index of the JCas
+	 * @since 2.1.0
+	 */
+	public StructuralIndex getStructuralIndex() {
+		if (structuralIndex == null)
+			structuralIndex = StructuralIndex.create(jcas);
+		return structuralIndex;
+	}
+
+	public JCas getJCas() {
+		return jcas;
+	}
+
+	public ReaderProfile<D> getProfile() {
+		return profile;
+	}
+}
@@ -0,0 +1,82 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.Rule;
+
+/**
+ * Receives timings and counters while documents are read. A listener is
+ * registered with {@link GenericXmlReader#setListener(ReaderListener)}, and
+ * called once per stage and rule after each document. Since a
+ * {@link ReaderProfile} can be shared between threads, listeners must be
+ * thread-safe.
+ *
+ * If no listener is set, {@link #NONE} is used, and the reader does not measure
+ * anything.
+ *
+ * @see MetricsListener
+ * @since 2.1.0
+ */
+public interface ReaderListener {
+
+	/**
+	 * A listener that ignores everything
+	 */
+	ReaderListener NONE = new ReaderListener() {
+	};
+
+	/**
+	 * The stages of reading a document. In streaming mode, the stages are
+	 * interleaved, and only {@link #READ} is reported.
+	 */
+	enum Stage {
+		/**
+		 * Parsing the input into a DOM
+		 */
+		PARSE,
+		/**
+		 * Traversing the DOM, collecting the text and creating XML annotations
+		 */
+		TRAVERSE,
+		/**
+		 * Evaluating the selectors of all rules
+		 */
+		MATCH,
+		/**
+		 * Creating the target annotations and calling the callbacks
+		 */
+		APPLY,
+		/**
+		 * The entire read, including all other stages
+		 */
+		READ
+	}
+
+	/**
+	 * Called when a stage has been completed.
+	 *
+	 * @param stage The stage
+	 * @param nanos The duration in nanoseconds
+	 */
+	default void stage(Stage stage, long nanos) {
+	}
+
+	/**
+	 * Called after the text has been collected.
+	 *
+	 * @param elements  The number of XML elements that have been annotated
+	 * @param textNodes The number of text nodes
+	 */
+	default void nodes(int elements, int textNodes) {
+	}
+
+	/**
+	 * Called for each rule after all rules have been applied.
+	 *
+	 * @param position      The position of the rule in the profile
+	 * @param rule          The rule
+	 * @param matches       The number of elements matched by the selector
+	 * @param selectorNanos The time spent evaluating the selector, in nanoseconds
+	 * @param callbackNanos The time spent in the callback, in nanoseconds
+	 */
+	default void rule(int position, Rule<?> rule, int matches, long selectorNanos, long callbackNanos) {
+	}
+}
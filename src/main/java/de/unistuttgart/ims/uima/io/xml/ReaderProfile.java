@@ -0,0 +1,297 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+import org.jsoup.nodes.Element;
+
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.IgnoreMode;
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.Rule;
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+
+/**
+ * An immutable, compiled snapshot of the configuration of a
+ * {@link GenericXmlReader}: The rules (with pre-compiled selectors), the text
+ * root selector, the ignore settings and all flags. A profile is created with
+ * {@link GenericXmlReader#compile()}, and is not affected by later changes to
+ * the reader.
+ *
+ * A profile does not keep any state about the documents it reads. All
+ * per-document state lives in a {@link ReaderContext}, which is created for
+ * each document. A single profile can therefore be shared by many threads
+ * without locking, as long as the ignore function and the rule callbacks are
+ * thread-safe themselves. Readers that override one of the deprecated hooks
+ * {@link GenericXmlReader#getFeatureStructure(JCas, XMLElement, Element, Rule)}
+ * or {@link GenericXmlReader#applyRule(JCas, Element, Map, Rule)} are an
+ * exception: The hooks are called on the reader, and a profile of such a reader
+ * must only be used by one thread at a time.
+ *
+ * <pre>
+ * ReaderProfile&lt;DocumentMetaData&gt; profile = gxr.compile();
+ * executor.submit(() -&gt; profile.read(inputStream));
+ * </pre>
+ *
+ * @param <D> The document class
+ * @since 2.1.0
+ */
+public final class ReaderProfile<D extends TOP> {
+
+	private static final Logger logger = LogManager.getLogger(GenericXmlReader.class);
+
+	final Class<D> documentClass;
+
+	final List<Rule<?>> rules;
+
+	final String textRootSelector;
+
+	final Function<Element, Boolean> ignoreFunction;
+
+	/**
+	 * The combination of ignored tags, ignored attributes and the ignore
+	 * function. Null, if no element is ignored.
+	 */
+	final Function<Element, Boolean> ignore;
+
+	final IgnoreMode ignoreMode;
+
+	final boolean preserveWhitespace;
+
+	final boolean skipEmptyElements;
+
+	final boolean streaming;
+
+	final Set<XmlElementFeature> xmlElementFeatures;
+
+	final ReaderListener listener;
+
+	final ForkJoinPool callbackPool;
+
+	final NamePool namePool;
+
+	final boolean structuralIndex;
+
+	final RuleMatcher ruleMatcher;
+
+	/**
+	 * The reader, if it overrides one of the deprecated hooks, or null
+	 */
+	final GenericXmlReader<D> hooks;
+
+	/**
+	 * Whether the reader overrides the deprecated
+	 * {@link GenericXmlReader#applyRule(JCas, Element, Map, Rule)}, which then
+	 * replaces the single-pass rule application
+	 */
+	final boolean applyRuleHook;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	ReaderProfile(GenericXmlReader<D> reader) {
+		this.documentClass = reader.documentClass;
+		this.rules = Collections.unmodifiableList(new ArrayList<Rule<?>>((List) reader.elementMapping));
+		this.textRootSelector = reader.getTextRootSelector();
+		this.ignoreFunction = reader.getIgnoreFunction();
+		this.ignore = IgnoreFilter.compile(reader.getIgnoredTags(), reader.getIgnoredAttributes(),
+				reader.getIgnoreFunction());
+		this.ignoreMode = reader.getIgnoreMode();
+		this.preserveWhitespace = reader.isPreserveWhitespace();
+		this.skipEmptyElements = reader.isSkipEmptyElements();
+		this.applyRuleHook = overrides(reader.getClass(), "applyRule", JCas.class, Element.class, Map.class,
+				Rule.class);
+		this.hooks = (applyRuleHook || overrides(reader.getClass(), "getFeatureStructure", JCas.class,
+				XMLElement.class, Element.class, Rule.class) ? reader : null);
+		if (reader.isStreaming() && applyRuleHook)
+			logger.warn("{} overrides applyRule, which needs a DOM, streaming is disabled.",
+					reader.getClass().getName());
+		this.streaming = reader.isStreaming() && !applyRuleHook;
+		Set<XmlElementFeature> features = EnumSet.noneOf(XmlElementFeature.class);
+		features.addAll(reader.getXmlElementFeatures());
+		this.xmlElementFeatures = Collections.unmodifiableSet(features);
+		this.listener = reader.getListener();
+		this.callbackPool = reader.getCallbackPool();
+		this.namePool = reader.getNamePool();
+		this.structuralIndex = reader.isStructuralIndex();
+		this.ruleMatcher = new RuleMatcher(rules);
+	}
+
+	/**
+	 * @return True, if a subclass of {@link GenericXmlReader} declares the method
+	 */
+	static boolean overrides(Class<?> cls, String name, Class<?>... parameterTypes) {
+		for (; cls != GenericXmlReader.class; cls = cls.getSuperclass())
+			try {
+				cls.getDeclaredMethod(name, parameterTypes);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// look in the superclass
+			}
+		return false;
+	}
+
+	/**
+	 * Reads a document into a new JCas.
+	 *
+	 * @param xmlStream The stream offering the XML data
+	 * @return The populated JCas object
+	 * @throws IOException   If the input stream errors
+	 * @throws UIMAException If there is an issue with creating the JCas.
+	 */
+	public JCas read(InputStream xmlStream) throws IOException, UIMAException {
+		return read(JCasFactory.createJCas(), xmlStream);
+	}
+
+	/**
+	 * Reads a document into an existing, empty JCas.
+	 *
+	 * @param jcas      The JCas to populate
+	 * @param xmlStream The stream offering the XML data
+	 * @return The populated JCas object
+	 * @throws IOException If the input stream errors
+	 */
+	public JCas read(JCas jcas, InputStream xmlStream) throws IOException {
+		return newContext(jcas).read(xmlStream);
+	}
+
+	/**
+	 * Reads a file into a new JCas. Large files are memory-mapped.
+	 *
+	 * @param path The XML file
+	 * @return The populated JCas object
+	 * @throws IOException   If the file can't be read
+	 * @throws UIMAException If there is an issue with creating the JCas.
+	 */
+	public JCas read(Path path) throws IOException, UIMAException {
+		return newContext(JCasFactory.createJCas()).read(path);
+	}
+
+	/**
+	 * Reads a file into an existing, empty JCas. Large files are memory-mapped.
+	 *
+	 * @param jcas The JCas to populate
+	 * @param path The XML file
+	 * @return The populated JCas object
+	 * @throws IOException If the file can't be read
+	 */
+	public JCas read(JCas jcas, Path path) throws IOException {
+		return newContext(jcas).read(path);
+	}
+
+	/**
+	 * Reads a document from a buffer into a new JCas.
+	 *
+	 * @param buffer The XML data between position and limit
+	 * @return The populated JCas object
+	 * @throws IOException   If the data can't be decoded
+	 * @throws UIMAException If there is an issue with creating the JCas.
+	 */
+	public JCas read(ByteBuffer buffer) throws IOException, UIMAException {
+		return newContext(JCasFactory.createJCas()).read(buffer);
+	}
+
+	/**
+	 * Reads a document from a buffer into an existing, empty JCas.
+	 *
+	 * @param jcas   The JCas to populate
+	 * @param buffer The XML data between position and limit
+	 * @return The populated JCas object
+	 * @throws IOException If the data can't be decoded
+	 */
+	public JCas read(JCas jcas, ByteBuffer buffer) throws IOException {
+		return newContext(jcas).read(buffer);
+	}
+
+	/**
+	 * Creates the per-document state for reading a single document. The context
+	 * gives access to the DOM and the XML ids after reading.
+	 *
+	 * @param jcas The JCas to populate
+	 * @return A new context
+	 */
+	public ReaderContext<D> newContext(JCas jcas) {
+		return new ReaderContext<D>(this, jcas);
+	}
+
+	public Class<D> getDocumentClass() {
+		return documentClass;
+	}
+
+	/**
+	 * @return An unmodifiable list of the rules
+	 */
+	public List<Rule<?>> getRules() {
+		return rules;
+	}
+
+	public String getTextRootSelector() {
+		return textRootSelector;
+	}
+
+	public Function<Element, Boolean> getIgnoreFunction() {
+		return ignoreFunction;
+	}
+
+	public IgnoreMode getIgnoreMode() {
+		return ignoreMode;
+	}
+
+	public boolean isPreserveWhitespace() {
+		return preserveWhitespace;
+	}
+
+	public boolean isSkipEmptyElements() {
+		return skipEmptyElements;
+	}
+
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	public boolean isStoreSelectors() {
+		return xmlElementFeatures.contains(XmlElementFeature.SELECTOR);
+	}
+
+	/**
+	 * @return An unmodifiable set of the features that are filled in XMLElement
+	 *         annotations
+	 */
+	public Set<XmlElementFeature> getXmlElementFeatures() {
+		return xmlElementFeatures;
+	}
+
+	public ReaderListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * @return The pool on which rule callbacks are run, or null
+	 */
+	public ForkJoinPool getCallbackPool() {
+		return callbackPool;
+	}
+
+	/**
+	 * @return The pool of tag and attribute names, or null
+	 */
+	public NamePool getNamePool() {
+		return namePool;
+	}
+
+	public boolean isStructuralIndex() {
+		return structuralIndex;
+	}
+}
@@ -0,0 +1,329 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.QueryParser;
+
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.Rule;
+
+/**
+ * Matches all rules against a DOM in a single traversal. Each selector is
+ * compiled once, and indexed by the tag name, id, class or attribute that its
+ * subject (i.e., the right-most compound selector) requires. For each element,
+ * only the rules that are indexed under one of its properties (and the rules
+ * that could not be indexed) are evaluated.
+ *
+ * The result is the same as calling {@link Element#select(String)} for each
+ * rule: For each rule, the matching elements are collected in document order.
+ * Global rules are evaluated against the entire document, all other rules only
+ * against the text root (and its descendants).
+ *
+ * @since 2.1.0
+ */
+class RuleMatcher {
+
+	List<Rule<?>> rules;
+
+	Evaluator[] evaluators;
+
+	Map<String, int[]> byTag = new HashMap<String, int[]>();
+
+	Map<String, int[]> byId = new HashMap<String, int[]>();
+
+	Map<String, int[]> byClass = new HashMap<String, int[]>();
+
+	Map<String, int[]> byAttribute = new HashMap<String, int[]>();
+
+	/**
+	 * Rules that have to be evaluated on every element
+	 */
+	int[] unindexed = new int[0];
+
+	boolean hasGlobalRules = false;
+
+	RuleMatcher(List<Rule<?>> rules) {
+		this.rules = new ArrayList<Rule<?>>(rules);
+		this.evaluators = new Evaluator[rules.size()];
+		for (int i = 0; i < this.rules.size(); i++) {
+			Rule<?> rule = this.rules.get(i);
+			evaluators[i] = QueryParser.parse(rule.getSelector());
+			hasGlobalRules = hasGlobalRules || rule.isGlobal();
+			index(i, rule.getSelector());
+		}
+	}
+
+	/**
+	 * Collects the matches of all rules.
+	 *
+	 * @param document The document, used for global rules
+	 * @param textRoot The root element for all other rules
+	 * @return For each rule (in the order of the rules), the list of matching
+	 *         elements in document order
+	 */
+	List<List<Element>> match(Element document, Element textRoot) {
+		return match(document, textRoot, Collections.emptySet(), null);
+	}
+
+	/**
+	 * Collects the matches of all rules, and measures the time spent in each
+	 * selector.
+	 *
+	 * @param document      The document, used for global rules
+	 * @param textRoot      The root element for all other rules
+	 * @param pruned        Roots of ignored subtrees, in which only global rules
+	 *                      are evaluated
+	 * @param selectorNanos For each rule, the time spent is added in
+	 *                      nanoseconds. If null, no time is measured.
+	 * @return For each rule (in the order of the rules), the list of matching
+	 *         elements in document order
+	 */
+	List<List<Element>> match(Element document, Element textRoot, Set<Element> pruned, long[] selectorNanos) {
+		List<List<Element>> matches = new ArrayList<List<Element>>(rules.size());
+		for (int i = 0; i < rules.size(); i++)
+			matches.add(new ArrayList<Element>());
+		Collector collector = new Collector(document, textRoot, matches);
+		collector.selectorNanos = selectorNanos;
+		collector.pruned = pruned;
+		if (hasGlobalRules)
+			document.filter(collector);
+		else
+			textRoot.filter(collector);
+		return matches;
+	}
+
+	/**
+	 * Splits the selector into groups, and indexes the rule under the key of each
+	 * group.
+	 */
+	private void index(int rule, String selector) {
+		List<String[]> keys = new ArrayList<String[]>();
+		for (String group : split(selector)) {
+			String[] key = key(group);
+			if (key == null) {
+				unindexed = add(unindexed, rule);
+				return;
+			}
+			keys.add(key);
+		}
+		for (String[] key : keys) {
+			Map<String, int[]> map;
+			switch (key[0]) {
+			case "tag":
+				map = byTag;
+				break;
+			case "id":
+				map = byId;
+				break;
+			case "class":
+				map = byClass;
+				break;
+			default:
+				map = byAttribute;
+			}
+			int[] indexed = map.get(key[1]);
+			map.put(key[1], (indexed == null ? new int[] { rule } : add(indexed, rule)));
+		}
+	}
+
+	/**
+	 * Splits a selector at top-level commas.
+	 *
+	 * @param selector The selector
+	 * @return The selector groups
+	 */
+	static List<String> split(String selector) {
+		List<String> groups = new ArrayList<String>();
+		int depth = 0, start = 0;
+		char quote = 0;
+		for (int i = 0; i < selector.length(); i++) {
+			char c = selector.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '"' || c == '\'')
+				quote = c;
+			else if (c == '(' || c == '[')
+				depth++;
+			else if (c == ')' || c == ']')
+				depth--;
+			else if (c == ',' && depth == 0) {
+				groups.add(selector.substring(start, i));
+				start = i + 1;
+			}
+		}
+		groups.add(selector.substring(start));
+		return groups;
+	}
+
+	/**
+	 * Determines the index key of a selector group, from its right-most compound
+	 * selector.
+	 *
+	 * @param group The selector group, without top-level commas
+	 * @return An array containing the kind of key and the key, or null if the
+	 *         group can't be indexed
+	 */
+	static String[] key(String group) {
+		String s = group.trim();
+		if (s.isEmpty() || s.indexOf('\\') >= 0)
+			return null;
+
+		// find the subject, i.e., the last compound selector
+		int depth = 0, start = 0;
+		char quote = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '"' || c == '\'')
+				quote = c;
+			else if (c == '(' || c == '[')
+				depth++;
+			else if (c == ')' || c == ']')
+				depth--;
+			else if (depth == 0 && (Character.isWhitespace(c) || c == '>' || c == '+' || c == '~'))
+				start = i + 1;
+		}
+		String subject = s.substring(start);
+		if (subject.isEmpty())
+			return null;
+
+		char first = subject.charAt(0);
+		if (first != '.' && first != '#' && first != '[' && first != ':' && first != '*') {
+			int end = indexOfAny(subject, ".#[:", 0);
+			String tag = subject.substring(0, end).replace('|', ':');
+			return new String[] { "tag", tag.toLowerCase(Locale.ROOT) };
+		} else if (first == '#') {
+			int end = indexOfAny(subject, ".#[:", 1);
+			return new String[] { "id", subject.substring(1, end) };
+		} else if (first == '.') {
+			int end = indexOfAny(subject, ".#[:", 1);
+			return new String[] { "class", subject.substring(1, end).toLowerCase(Locale.ROOT) };
+		} else if (first == '[' && subject.length() > 1 && subject.charAt(1) != '^') {
+			int end = indexOfAny(subject, "=~!^$*]", 1);
+			String attribute = subject.substring(1, end).trim();
+			if (attribute.isEmpty())
+				return null;
+			return new String[] { "attribute", attribute.toLowerCase(Locale.ROOT) };
+		}
+		return null;
+	}
+
+	private static int indexOfAny(String s, String chars, int from) {
+		for (int i = from; i < s.length(); i++)
+			if (chars.indexOf(s.charAt(i)) >= 0)
+				return i;
+		return s.length();
+	}
+
+	private static int[] add(int[] array, int value) {
+		int[] r = Arrays.copyOf(array, array.length + 1);
+		r[array.length] = value;
+		return r;
+	}
+
+	/**
+	 * Collects the matches during traversal
+	 */
+	class Collector implements NodeFilter {
+		Element document;
+		Element textRoot;
+		List<List<Element>> matches;
+		boolean inRoot = false;
+
+		/**
+		 * The last element that has been tested for each rule, to avoid evaluating
+		 * a rule twice on the same element
+		 */
+		Element[] tested = new Element[rules.size()];
+
+		long[] selectorNanos = null;
+
+		Set<Element> pruned;
+
+		/**
+		 * The depth of the pruned subtree we are in, or -1
+		 */
+		int prunedDepth = -1;
+
+		Collector(Element document, Element textRoot, List<List<Element>> matches) {
+			this.document = document;
+			this.textRoot = textRoot;
+			this.matches = matches;
+		}
+
+		@Override
+		public FilterResult head(Node node, int depth) {
+			if (!(node instanceof Element))
+				return FilterResult.CONTINUE;
+			Element elm = (Element) node;
+			if (elm == textRoot)
+				inRoot = true;
+			if (prunedDepth < 0 && !pruned.isEmpty() && pruned.contains(elm)) {
+				if (!hasGlobalRules)
+					return FilterResult.SKIP_ENTIRELY;
+				prunedDepth = depth;
+			}
+
+			test(elm, byTag.get(elm.normalName()));
+			if (!byId.isEmpty())
+				test(elm, byId.get(elm.id()));
+			for (Map.Entry<String, int[]> entry : byClass.entrySet())
+				if (elm.hasClass(entry.getKey()))
+					test(elm, entry.getValue());
+			for (Map.Entry<String, int[]> entry : byAttribute.entrySet())
+				if (elm.hasAttr(entry.getKey()))
+					test(elm, entry.getValue());
+			test(elm, unindexed);
+			return FilterResult.CONTINUE;
+		}
+
+		@Override
+		public FilterResult tail(Node node, int depth) {
+			if (node == textRoot)
+				inRoot = false;
+			if (depth == prunedDepth && node instanceof Element)
+				prunedDepth = -1;
+			return FilterResult.CONTINUE;
+		}
+
+		private void test(Element elm, int[] candidates) {
+			if (candidates == null)
+				return;
+			for (int i : candidates) {
+				if (tested[i] == elm)
+					continue;
+				tested[i] = elm;
+				Element root;
+				if (rules.get(i).isGlobal())
+					root = document;
+				else if (inRoot && prunedDepth < 0)
+					root = textRoot;
+				else
+					continue;
+				if (selectorNanos == null) {
+					if (evaluators[i].matches(root, elm))
+						matches.get(i).add(elm);
+				} else {
+					long start = System.nanoTime();
+					boolean match = evaluators[i].matches(root, elm);
+					selectorNanos[i] += System.nanoTime() - start;
+					if (match)
+						matches.get(i).add(elm);
+				}
+			}
+		}
+	}
+}
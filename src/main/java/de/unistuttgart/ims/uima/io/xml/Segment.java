@@ -0,0 +1,112 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import static de.unistuttgart.ims.uima.io.xml.GenericInlineWriter.isBegin;
+import static de.unistuttgart.ims.uima.io.xml.GenericInlineWriter.isEmpty;
+import static de.unistuttgart.ims.uima.io.xml.GenericInlineWriter.offset;
+import static de.unistuttgart.ims.uima.io.xml.GenericInlineWriter.ordinal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A part of a document that is written independently of the others: A range of
+ * the tag keys, and the range of the text up to the next segment. Segments are
+ * split between elements on the same level, such that written one after the
+ * other, they result in the same output as the whole document.
+ */
+final class Segment {
+
+	/**
+	 * The range of keys
+	 */
+	final int from, to;
+
+	/**
+	 * The range of text
+	 */
+	final int begin, end;
+
+	/**
+	 * The positions of the annotations that are open at the begin and at the
+	 * end of the segment, outermost first
+	 */
+	final int[] open, close;
+
+	Segment(int from, int to, int begin, int end, int[] open, int[] close) {
+		this.from = from;
+		this.to = to;
+		this.begin = begin;
+		this.end = end;
+		this.open = open;
+		this.close = close;
+	}
+
+	/**
+	 * Splits the keys of a document into segments of at least
+	 * <code>size</code> characters. The segments are split before elements on the
+	 * highest level that has enough elements for the number of segments, usually
+	 * the children of the body or of the root element.
+	 *
+	 * @param events The keys in the order in which they are written
+	 * @param length The length of the text
+	 * @param size   The minimal number of characters of a segment
+	 * @return The segments in document order
+	 */
+	static List<Segment> split(long[] events, int length, int size) {
+		List<Segment> segments = new ArrayList<Segment>();
+		int target = length / Math.max(size, 1);
+		int level = (target < 2 ? -1 : level(events, target));
+
+		int[] stack = new int[16];
+		int top = 0, from = 0, begin = 0;
+		int[] open = new int[0];
+		for (int k = 0; k < events.length; k++) {
+			long event = events[k];
+			if (top == level && isBegin(event) && k > from && offset(event) - begin >= size) {
+				int[] close = Arrays.copyOf(stack, top);
+				segments.add(new Segment(from, k, begin, offset(event), open, close));
+				from = k;
+				begin = offset(event);
+				open = close;
+			}
+			if (isEmpty(event))
+				continue;
+			if (isBegin(event)) {
+				if (top == stack.length)
+					stack = Arrays.copyOf(stack, 2 * top);
+				stack[top++] = ordinal(event);
+			} else if (top > 0)
+				top--;
+		}
+		segments.add(new Segment(from, events.length, begin, length, open, new int[0]));
+		return segments;
+	}
+
+	/**
+	 * @return The highest level with at least <code>target</code> elements, or
+	 *         the level with most elements
+	 */
+	private static int level(long[] events, int target) {
+		int[] counts = new int[16];
+		int depth = 0;
+		for (long event : events) {
+			if (isBegin(event)) {
+				if (depth == counts.length)
+					counts = Arrays.copyOf(counts, 2 * depth);
+				counts[depth]++;
+				if (!isEmpty(event))
+					depth++;
+			} else if (depth > 0)
+				depth--;
+		}
+		int best = 0;
+		for (int d = 0; d < counts.length; d++) {
+			if (counts[d] >= target)
+				return d;
+			if (counts[d] > counts[best])
+				best = d;
+		}
+		return best;
+	}
+}
@@ -0,0 +1,277 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.factory.TypeSystemDescriptionFactory;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.jsoup.nodes.CDataNode;
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+/**
+ * Reads files that contain many documents, e.g. a <code>teiCorpus</code> with
+ * many <code>TEI</code> children, into one JCas per document. The input is
+ * read with a StAX pull parser. Each element that matches the record selector
+ * is built into a separate DOM, which is converted with the rules of the
+ * profile, as if the record were a file of its own. The text root selector of
+ * the profile is evaluated within the record.
+ *
+ * Records are read lazily, when the next JCas is requested, such that memory
+ * consumption is bounded by the largest record instead of the whole file.
+ *
+ * <pre>
+ * SplittingReader&lt;DocumentMetaData&gt; reader = new SplittingReader&lt;DocumentMetaData&gt;(gxr.compile(), "teiCorpus &gt; TEI");
+ * try (SplittingReader.Records records = reader.read(path)) {
+ * 	while (records.hasNext())
+ * 		process(records.next());
+ * }
+ * </pre>
+ *
+ * The record selector can only refer to the element and its ancestors, like the
+ * selectors in streaming mode (see {@link GenericXmlReader#setStreaming(boolean)}).
+ * Records are not nested: Matching elements within a record belong to the
+ * record.
+ *
+ * @param <D> The document class
+ * @since 2.1.0
+ */
+public class SplittingReader<D extends TOP> {
+
+	final ReaderProfile<D> profile;
+
+	final String recordSelector;
+
+	final Evaluator recordEvaluator;
+
+	TypeSystemDescription typeSystemDescription = null;
+
+	/**
+	 * @param profile        The profile used to read each record
+	 * @param recordSelector A CSS selector for the records
+	 * @throws IllegalArgumentException If the record selector depends on
+	 *                                  siblings or children
+	 */
+	public SplittingReader(ReaderProfile<D> profile, String recordSelector) {
+		if (!StreamingReader.isStreamable(recordSelector))
+			throw new IllegalArgumentException(
+					"Record selector " + recordSelector + " can't be decided from an element and its ancestors.");
+		this.profile = profile;
+		this.recordSelector = recordSelector;
+		this.recordEvaluator = QueryParser.parse(recordSelector);
+	}
+
+	/**
+	 * Reads the records of a stream. The encoding is detected as in
+	 * {@link ReaderContext#read(InputStream)}.
+	 *
+	 * @param xmlStream The stream offering the XML data, closed with the records
+	 * @return The records
+	 * @throws IOException If the stream can't be read
+	 */
+	public Records read(InputStream xmlStream) throws IOException {
+		InputStream in = (xmlStream.markSupported() ? xmlStream : new BufferedInputStream(xmlStream));
+		Charset charset = EncodingDetector.detect(in);
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		try {
+			return new Records(factory.createXMLStreamReader(new BufferedReader(new InputStreamReader(in, charset))),
+					in, charset);
+		} catch (XMLStreamException e) {
+			in.close();
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Reads the records of a file.
+	 *
+	 * @param path The XML file
+	 * @return The records, which need to be closed
+	 * @throws IOException If the file can't be read
+	 */
+	public Records read(Path path) throws IOException {
+		return read(Files.newInputStream(path));
+	}
+
+	/**
+	 * Creates the JCas for the next record. By default, each record is read into
+	 * a new JCas with the type system found on the class path.
+	 *
+	 * @return An empty JCas
+	 * @throws UIMAException If the JCas can't be created
+	 */
+	protected JCas createJCas() throws UIMAException {
+		if (typeSystemDescription == null)
+			typeSystemDescription = TypeSystemDescriptionFactory.createTypeSystemDescription();
+		return JCasFactory.createJCas(typeSystemDescription);
+	}
+
+	public ReaderProfile<D> getProfile() {
+		return profile;
+	}
+
+	public String getRecordSelector() {
+		return recordSelector;
+	}
+
+	/**
+	 * The records of one input, each read into a JCas when it is requested. The
+	 * iterator throws {@link UncheckedIOException} if the input is not
+	 * well-formed.
+	 */
+	public class Records implements Iterator<JCas>, Closeable {
+
+		final XMLStreamReader xsr;
+
+		final Closeable input;
+
+		final Charset charset;
+
+		/**
+		 * The open elements outside of records, with the document at the bottom
+		 */
+		final Deque<Element> ancestors = new ArrayDeque<Element>();
+
+		Document next = null;
+
+		boolean done = false;
+
+		Records(XMLStreamReader xsr, Closeable input, Charset charset) {
+			this.xsr = xsr;
+			this.input = input;
+			this.charset = charset;
+			ancestors.push(new Document(""));
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null && !done)
+				try {
+					next = nextRecord();
+				} catch (XMLStreamException e) {
+					throw new UncheckedIOException(new IOException(e));
+				}
+			return next != null;
+		}
+
+		@Override
+		public JCas next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			Document record = next;
+			next = null;
+			try {
+				ReaderContext<D> context = profile.newContext(createJCas());
+				context.charset = charset;
+				return context.read(record);
+			} catch (UIMAException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * Skips to the next record and builds its DOM.
+		 *
+		 * @return The DOM of the record, or null at the end of the input
+		 */
+		Document nextRecord() throws XMLStreamException {
+			while (xsr.hasNext()) {
+				switch (xsr.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					Element elm = StreamingReader.element(xsr, profile.namePool);
+					ancestors.peek().appendChild(elm);
+					if (elm.is(recordEvaluator)) {
+						elm.remove();
+						Document record = new Document("");
+						record.outputSettings().charset(charset);
+						record.appendChild(elm);
+						build(elm);
+						return record;
+					}
+					ancestors.push(elm);
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					ancestors.pop().remove();
+					break;
+				default:
+				}
+			}
+			close();
+			return null;
+		}
+
+		/**
+		 * Reads the content of a record up to its end tag.
+		 */
+		void build(Element record) throws XMLStreamException {
+			Element current = record;
+			while (current != null) {
+				switch (xsr.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					Element elm = StreamingReader.element(xsr, profile.namePool);
+					current.appendChild(elm);
+					current = elm;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					current = (current == record ? null : current.parent());
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+					current.appendChild(new TextNode(xsr.getText()));
+					break;
+				case XMLStreamConstants.CDATA:
+					current.appendChild(new CDataNode(xsr.getText()));
+					break;
+				case XMLStreamConstants.COMMENT:
+					current.appendChild(new Comment(xsr.getText()));
+					break;
+				case XMLStreamConstants.PROCESSING_INSTRUCTION:
+					current.appendChild(StreamingReader.xmlDeclaration(xsr.getPITarget(), xsr.getPIData()));
+					break;
+				default:
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			if (done)
+				return;
+			done = true;
+			try {
+				xsr.close();
+				input.close();
+			} catch (XMLStreamException | IOException e) {
+				throw new UncheckedIOException(new IOException(e));
+			}
+		}
+	}
+}
@@ -0,0 +1,511 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.nodes.XmlDeclaration;
+import org.jsoup.parser.ParseSettings;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.jsoup.select.Selector;
+
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.IgnoreMode;
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.Rule;
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+import de.unistuttgart.ims.uima.io.xml.type.XMLParsingDescription;
+
+/**
+ * The streaming engine behind {@link GenericXmlReader#setStreaming(boolean)}.
+ * The input is read with a StAX pull parser. For each open element, a shallow
+ * jsoup element is kept that is attached to its open ancestors, such that
+ * selectors can be evaluated. Streamable selectors only depend on the element
+ * and its ancestors, and are therefore evaluated when the element is opened.
+ * Once an element is closed, the {@link Visitor} creates the annotation, the
+ * matching rules are applied, and the element is detached again.
+ *
+ * The text content is only collected for open elements that are matched by a
+ * rule with a callback, or by any rule if empty elements are skipped, and is
+ * attached to them as a single text node when they are closed. Memory
+ * consumption (apart from the JCas) is therefore bounded by the depth of the
+ * document and the character data of the open elements that need it.
+ *
+ * @param <D> The document class of the reader
+ * @since 2.1.0
+ */
+class StreamingReader<D extends TOP> {
+
+	private static final Logger logger = LogManager.getLogger(StreamingReader.class);
+
+	ReaderContext<D> context;
+
+	ReaderProfile<D> profile;
+
+	JCas jcas;
+
+	StreamingVisitor visitor;
+
+	/**
+	 * The rules that can be decided on an element when it is closed
+	 */
+	List<Rule<?>> rules = new ArrayList<Rule<?>>();
+
+	/**
+	 * Compiled selectors of {@link #rules}, in the same order
+	 */
+	List<Evaluator> evaluators = new ArrayList<Evaluator>();
+
+	/**
+	 * Positions of {@link #rules} in the profile
+	 */
+	int[] ruleIndex;
+
+	Evaluator rootEvaluator = null;
+
+	/**
+	 * The open elements. The bottom of the stack is the document.
+	 */
+	Deque<Frame> stack = new ArrayDeque<Frame>();
+
+	/**
+	 * The character data since the outermost open element that needs its text
+	 */
+	StringBuilder text = new StringBuilder();
+
+	/**
+	 * The number of open elements that need their text
+	 */
+	int textElements = 0;
+
+	Document document = new Document("");
+
+	Element textRoot = null;
+
+	/**
+	 * The stack size at which the text root has been opened
+	 */
+	int rootLevel = 0;
+
+	StreamingReader(ReaderContext<D> context) {
+		this.context = context;
+		this.profile = context.getProfile();
+		this.jcas = context.getJCas();
+		this.visitor = new StreamingVisitor(jcas, profile.isPreserveWhitespace());
+		if (profile.ignore != null)
+			visitor.setIgnoreFunction(profile.ignore);
+		visitor.setIgnoreSubtrees(profile.getIgnoreMode() == IgnoreMode.SUBTREE);
+		visitor.setFeatures(profile.getXmlElementFeatures());
+		visitor.setNamePool(profile.namePool);
+
+		List<Integer> indices = new ArrayList<Integer>();
+		for (int i = 0; i < profile.getRules().size(); i++) {
+			Rule<?> rule = profile.getRules().get(i);
+			if (isStreamable(rule.getSelector())) {
+				rules.add(rule);
+				evaluators.add(QueryParser.parse(rule.getSelector()));
+				indices.add(i);
+			} else
+				logger.warn("Rule {} can not be applied in streaming mode and will be skipped.", rule);
+		}
+		ruleIndex = indices.stream().mapToInt(Integer::intValue).toArray();
+		if (profile.getTextRootSelector() != null) {
+			if (!isStreamable(profile.getTextRootSelector()))
+				logger.warn("Text root selector {} may not be evaluated correctly in streaming mode.",
+						profile.getTextRootSelector());
+			rootEvaluator = QueryParser.parse(profile.getTextRootSelector());
+		}
+	}
+
+	JCas read(Reader xmlReader) throws IOException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+
+		List<String> declarations = new LinkedList<String>();
+		try {
+			XMLStreamReader xsr = factory.createXMLStreamReader(xmlReader);
+
+			Frame documentFrame = new Frame(document, null);
+			documentFrame.inRoot = rootEvaluator == null;
+			stack.push(documentFrame);
+			if (documentFrame.inRoot) {
+				textRoot = document;
+				rootLevel = 1;
+				visitor.head(document, 0);
+			}
+
+			if (xsr.getVersion() != null) {
+				StringBuilder b = new StringBuilder();
+				b.append("version=\"").append(xsr.getVersion()).append('"');
+				if (xsr.getCharacterEncodingScheme() != null)
+					b.append(" encoding=\"").append(xsr.getCharacterEncodingScheme()).append('"');
+				if (xsr.standaloneSet())
+					b.append(" standalone=\"").append(xsr.isStandalone() ? "yes" : "no").append('"');
+				declarations.add(declaration("xml", b.toString()));
+			}
+
+			while (xsr.hasNext()) {
+				switch (xsr.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					startElement(xsr);
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					endElement();
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					characters(xsr.getText());
+					break;
+				case XMLStreamConstants.PROCESSING_INSTRUCTION:
+					String declaration = declaration(xsr.getPITarget(), xsr.getPIData());
+					if (stack.size() == 1)
+						declarations.add(declaration);
+					break;
+				default:
+				}
+			}
+			xsr.close();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+
+		if (stack.peek().inRoot)
+			visitor.tail(document, 0);
+
+		// closes the CAS
+		visitor.getJCas();
+		if (context.measured)
+			context.listener.nodes(visitor.getElementCount(), visitor.getTextNodeCount());
+
+		XMLParsingDescription parsingDescription = new XMLParsingDescription(jcas);
+		parsingDescription.setEncoding(context.getCharset().name());
+		parsingDescription.setXmlDeclarations(ArrayUtil.toStringArray(jcas, declarations));
+		parsingDescription.addToIndexes();
+		return jcas;
+	}
+
+	private void startElement(XMLStreamReader xsr) {
+		Frame parent = stack.peek();
+		Element elm = element(xsr, profile.namePool);
+		parent.element.appendChild(elm);
+		parent.children++;
+
+		Frame frame = new Frame(elm, parent);
+		frame.elementIndex = ++parent.elements;
+		if (!frame.inRoot && textRoot == null && elm.is(rootEvaluator)) {
+			frame.inRoot = true;
+			textRoot = elm;
+			rootLevel = stack.size() + 1;
+		}
+		stack.push(frame);
+		if (frame.inRoot) {
+			visitor.head(elm, stack.size() - rootLevel);
+			frame.pruned = visitor.skipDepth >= 0;
+		}
+		match(frame);
+		if (frame.needsText) {
+			if (textElements++ == 0)
+				text.setLength(0);
+			frame.textBegin = text.length();
+		}
+	}
+
+	/**
+	 * Evaluates the selectors of all rules on a newly opened element
+	 */
+	private void match(Frame frame) {
+		Element elm = frame.element;
+		for (int i = 0; i < rules.size(); i++) {
+			Rule<?> rule = rules.get(i);
+			Element root;
+			if (rule.isGlobal())
+				root = document;
+			else if (frame.inRoot && !frame.pruned)
+				root = textRoot;
+			else
+				continue;
+			int index = ruleIndex[i];
+			boolean match;
+			if (context.measured) {
+				long start = System.nanoTime();
+				match = evaluators.get(i).matches(root, elm);
+				context.selectorNanos[index] += System.nanoTime() - start;
+			} else
+				match = evaluators.get(i).matches(root, elm);
+			if (match) {
+				if (frame.matches == null)
+					frame.matches = new ArrayList<Integer>(2);
+				frame.matches.add(i);
+				frame.needsText |= rule.getCallback() != null || profile.isSkipEmptyElements();
+			}
+		}
+	}
+
+	private void endElement() {
+		Frame frame = stack.peek();
+		Element elm = frame.element;
+		if (frame.needsText) {
+			if (frame.children > 0)
+				elm.appendChild(new TextNode(text.substring(frame.textBegin)));
+			textElements--;
+		}
+
+		XMLElement hAnno = null;
+		if (frame.inRoot) {
+			visitor.last = null;
+			visitor.tail(elm, stack.size() - rootLevel);
+			hAnno = visitor.last;
+		}
+
+		if (frame.matches != null)
+			for (int i : frame.matches)
+				context.applyRule(elm, hAnno, rules.get(i), ruleIndex[i]);
+
+		stack.pop();
+		elm.remove();
+	}
+
+	private void characters(String s) {
+		Frame frame = stack.peek();
+		if (stack.size() > 1) {
+			if (textElements > 0)
+				text.append(s);
+			frame.children++;
+		}
+		if (frame.inRoot) {
+			TextNode textNode = new TextNode(s);
+			visitor.head(textNode, stack.size() - rootLevel + 1);
+			visitor.tail(textNode, stack.size() - rootLevel + 1);
+		}
+	}
+
+	private String declaration(String target, String data) {
+		XmlDeclaration xmlDecl = xmlDeclaration(target, data);
+		if (stack.peek().inRoot) {
+			visitor.head(xmlDecl, stack.size() - rootLevel + 1);
+			visitor.tail(xmlDecl, stack.size() - rootLevel + 1);
+		}
+		return xmlDecl.getWholeDeclaration();
+	}
+
+	/**
+	 * Creates a shallow element for the current start tag.
+	 *
+	 * @param xsr   A reader positioned at a start tag
+	 * @param names The pool for tag and attribute names, or null
+	 * @return An element with the attributes, but without children
+	 */
+	static Element element(XMLStreamReader xsr, NamePool names) {
+		Element elm = new Element(Tag.valueOf(name(names, xsr.getLocalName()), ParseSettings.preserveCase), "");
+		for (int i = 0; i < xsr.getAttributeCount(); i++) {
+			String prefix = xsr.getAttributePrefix(i);
+			String name = xsr.getAttributeLocalName(i);
+			if (prefix != null && !prefix.isEmpty())
+				name = prefix + ":" + name;
+			elm.attr(name(names, name), xsr.getAttributeValue(i));
+		}
+		return elm;
+	}
+
+	private static String name(NamePool names, String name) {
+		return (names == null ? name : names.intern(name));
+	}
+
+	/**
+	 * Creates a declaration node for a processing instruction, with attributes
+	 * parsed as jsoup would.
+	 *
+	 * @param target The target of the processing instruction
+	 * @param data   The data, can be null
+	 * @return The declaration
+	 */
+	static XmlDeclaration xmlDeclaration(String target, String data) {
+		String source = "<?" + target + (data == null || data.isEmpty() ? "" : " " + data) + "?>";
+		for (Node node : Jsoup.parse(source, "", Parser.xmlParser()).childNodes())
+			if (node instanceof XmlDeclaration)
+				return (XmlDeclaration) node;
+		return new XmlDeclaration(target, false);
+	}
+
+	/**
+	 * Checks whether a selector can be decided when an element is opened, i.e.,
+	 * without looking at siblings, child elements or text. The selector is
+	 * parsed, and streamable if it only consists of tags, ids, classes and
+	 * attributes, combined with the descendant and child combinators, groups and
+	 * <code>:not</code>. Pseudo selectors such as <code>:first-child</code> or
+	 * <code>:contains</code> and sibling combinators are not streamable.
+	 *
+	 * @param selector The CSS selector
+	 * @return true, if the selector only depends on the element and its ancestors
+	 */
+	static boolean isStreamable(String selector) {
+		try {
+			return isStreamable(QueryParser.parse(selector));
+		} catch (Selector.SelectorParseException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * The evaluators that only look at the element itself
+	 */
+	private static final Class<?>[] LOCAL_EVALUATORS = new Class<?>[] { Evaluator.Tag.class,
+			Evaluator.TagEndsWith.class, Evaluator.Id.class, Evaluator.Class.class, Evaluator.Attribute.class,
+			Evaluator.AttributeStarting.class, Evaluator.AttributeKeyPair.class,
+			Evaluator.AttributeWithValueMatching.class, Evaluator.AllElements.class };
+
+	/**
+	 * Combinators whose operands are evaluated on the element or its ancestors.
+	 * Their classes are not public in jsoup, therefore they are identified by
+	 * name, and their operands are read reflectively.
+	 */
+	private static final String[] COMBINATORS = new String[] { "CombiningEvaluator$And", "CombiningEvaluator$Or",
+			"StructuralEvaluator$Parent", "StructuralEvaluator$ImmediateParent", "StructuralEvaluator$Not",
+			"StructuralEvaluator$Root" };
+
+	static boolean isStreamable(Evaluator evaluator) {
+		for (Class<?> cls : LOCAL_EVALUATORS)
+			if (cls.isInstance(evaluator))
+				return true;
+		String name = evaluator.getClass().getName();
+		if (!name.startsWith("org.jsoup.select.")
+				|| !Arrays.asList(COMBINATORS).contains(name.substring("org.jsoup.select.".length())))
+			return false;
+		try {
+			for (Class<?> cls = evaluator.getClass(); cls != Evaluator.class; cls = cls.getSuperclass())
+				for (Field field : cls.getDeclaredFields()) {
+					if (Evaluator.class.isAssignableFrom(field.getType())) {
+						field.setAccessible(true);
+						Evaluator operand = (Evaluator) field.get(evaluator);
+						if (operand != null && !isStreamable(operand))
+							return false;
+					} else if (Collection.class.isAssignableFrom(field.getType())) {
+						field.setAccessible(true);
+						for (Object operand : (Collection<?>) field.get(evaluator))
+							if (!(operand instanceof Evaluator) || !isStreamable((Evaluator) operand))
+								return false;
+					}
+				}
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * An open element
+	 */
+	static class Frame {
+		Element element;
+		Frame parent;
+		boolean inRoot;
+		/**
+		 * Whether the element is in an ignored subtree
+		 */
+		boolean pruned = false;
+		/**
+		 * Whether the text of the element is collected
+		 */
+		boolean needsText = false;
+		/**
+		 * Position of the element's text in {@link StreamingReader#text}
+		 */
+		int textBegin = 0;
+		/**
+		 * Positions of the rules that match the element, or null
+		 */
+		List<Integer> matches = null;
+		/**
+		 * Number of child nodes seen so far
+		 */
+		int children = 0;
+		/**
+		 * Number of child elements seen so far
+		 */
+		int elements = 0;
+		/**
+		 * 1-based position among the element siblings
+		 */
+		int elementIndex = 1;
+		String selector = null;
+
+		Frame(Element element, Frame parent) {
+			this.element = element;
+			this.parent = parent;
+			this.inRoot = parent != null && parent.inRoot;
+		}
+
+		/**
+		 * Mimics {@link Element#cssSelector()}, but always adds the sibling index
+		 * (we don't know whether later siblings will match).
+		 * 
+		 * @return A CSS selector that identifies the element uniquely
+		 */
+		String getSelector() {
+			if (selector == null) {
+				if (element.id().length() > 0)
+					return selector = "#" + element.id();
+				StringBuilder b = new StringBuilder(element.tagName().replace(':', '|'));
+				for (String cls : element.classNames())
+					b.append('.').append(cls);
+				if (parent == null || parent.element instanceof Document)
+					return selector = b.toString();
+				b.append(":nth-child(").append(elementIndex).append(')');
+				selector = parent.getSelector() + " > " + b.toString();
+			}
+			return selector;
+		}
+	}
+
+	/**
+	 * A visitor that does not keep the created annotations, and computes
+	 * selectors from the stack of open elements (jsoup can't, because siblings
+	 * are gone)
+	 */
+	class StreamingVisitor extends Visitor {
+
+		XMLElement last = null;
+
+		StreamingVisitor(JCas jcas, boolean preserveWhitespace) {
+			super(jcas, preserveWhitespace);
+		}
+
+		@Override
+		protected String getSelector(Element elm) {
+			Frame frame = stack.peek();
+			if (frame.element != elm)
+				return super.getSelector(elm);
+			return frame.getSelector();
+		}
+
+		@Override
+		protected void register(Element elm, XMLElement anno) {
+			last = anno;
+		}
+	}
+}
@@ -0,0 +1,331 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.uima.jcas.JCas;
+
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+
+/**
+ * The tree of the {@link XMLElement} annotations of a JCas, in primitive form:
+ * For each element in document order, its begin and end offsets, the id of its
+ * tag, the position of its parent, its depth and the position after its last
+ * descendant. The numbers are kept in a direct buffer outside of the Java heap.
+ * Elements are referred to by their position, and tags by their id, such that
+ * lookups don't create any objects. Only the annotations themselves, returned
+ * by {@link #get(int)}, are referenced from an array on the heap (one
+ * reference per element, the annotations are kept alive by the JCas anyway).
+ *
+ * The descendants of the element at position <code>i</code> are the elements
+ * between <code>i + 1</code> and {@link #next(int)} (nested sets). In addition,
+ * the text is divided into runs in which the innermost enclosing element does
+ * not change, at most two per element. Finding the innermost element that
+ * encloses an offset is a binary search in these runs, O(log n) regardless of
+ * the depth. Finding an enclosing element with a specific tag walks up the
+ * ancestors from there, O(depth).
+ *
+ * <pre>
+ * StructuralIndex index = StructuralIndex.create(jcas);
+ * int sp = index.getTagId("sp");
+ * for (int i = index.enclosing(offset, sp); i &gt;= 0; i = index.ancestor(i, sp))
+ * 	process(index.get(i));
+ * </pre>
+ *
+ * An index is created with {@link #create(JCas)}, or by the reader if
+ * {@link GenericXmlReader#setStructuralIndex(boolean)} is set (see
+ * {@link GenericXmlReader#getStructuralIndex()} and
+ * {@link ReaderContext#getStructuralIndex()}). It is a snapshot: Elements that
+ * are added to or removed from the JCas later are not reflected. If the
+ * document order is not known (i.e., {@link XmlElementFeature#ORDER} has not
+ * been filled), the elements are arranged by their spans, and the order of
+ * nested elements with identical spans is arbitrary.
+ *
+ * @since 2.1.0
+ */
+public class StructuralIndex {
+
+	static final int BEGIN = 0, END = 1, TAG = 2, PARENT = 3, DEPTH = 4, NEXT = 5;
+
+	/**
+	 * The number of ints per element
+	 */
+	static final int FIELDS = 6;
+
+	final IntBuffer buffer;
+
+	/**
+	 * The runs of the text, as pairs of the offset at which a run begins and the
+	 * position of its innermost enclosing element (or -1), ordered by offset
+	 */
+	final IntBuffer runs;
+
+	final XMLElement[] elements;
+
+	final String[] tags;
+
+	final Map<String, Integer> tagIds;
+
+	final boolean documentOrder;
+
+	StructuralIndex(List<XMLElement> elements, boolean documentOrder) {
+		int n = elements.size();
+		this.elements = elements.toArray(new XMLElement[n]);
+		this.documentOrder = documentOrder;
+		this.buffer = ByteBuffer.allocateDirect(Math.max(n, 1) * FIELDS * 4).order(ByteOrder.nativeOrder())
+				.asIntBuffer();
+		this.tagIds = new HashMap<String, Integer>();
+		List<String> names = new ArrayList<String>();
+
+		int[] stack = new int[16];
+		int top = 0;
+		Runs runs = new Runs(n);
+		for (int i = 0; i < n; i++) {
+			XMLElement element = this.elements[i];
+			while (top > 0 && !contains(stack[top - 1], element)) {
+				int j = stack[--top];
+				buffer.put(j * FIELDS + NEXT, i);
+				runs.close(this.elements[j], top > 0 ? stack[top - 1] : -1);
+			}
+			int tag = -1;
+			if (element.getTag() != null) {
+				Integer id = tagIds.get(element.getTag());
+				if (id == null) {
+					id = names.size();
+					tagIds.put(element.getTag(), id);
+					names.add(element.getTag());
+				}
+				tag = id;
+			}
+			int p = i * FIELDS;
+			buffer.put(p + BEGIN, element.getBegin());
+			buffer.put(p + END, element.getEnd());
+			buffer.put(p + TAG, tag);
+			buffer.put(p + PARENT, top > 0 ? stack[top - 1] : -1);
+			buffer.put(p + DEPTH, top);
+			runs.open(element, i);
+			if (top == stack.length)
+				stack = Arrays.copyOf(stack, 2 * top);
+			stack[top++] = i;
+		}
+		while (top > 0) {
+			int j = stack[--top];
+			buffer.put(j * FIELDS + NEXT, n);
+			runs.close(this.elements[j], top > 0 ? stack[top - 1] : -1);
+		}
+		this.tags = names.toArray(new String[names.size()]);
+		this.runs = runs.toBuffer();
+	}
+
+	/**
+	 * Collects the runs while the elements are visited in the order of the
+	 * index. A run begins where a non-empty element begins or ends, and if two
+	 * runs begin at the same offset, the later one wins.
+	 */
+	static class Runs {
+		int[] runs;
+		int size = 0;
+
+		Runs(int n) {
+			runs = new int[4 * Math.max(n, 1) + 2];
+			add(0, -1);
+		}
+
+		void open(XMLElement element, int i) {
+			if (element.getBegin() < element.getEnd())
+				add(element.getBegin(), i);
+		}
+
+		void close(XMLElement element, int parent) {
+			if (element.getBegin() < element.getEnd())
+				add(element.getEnd(), parent);
+		}
+
+		void add(int offset, int element) {
+			if (size > 0 && runs[size - 2] == offset)
+				size -= 2;
+			if (size > 0 && runs[size - 1] == element)
+				return;
+			runs[size++] = offset;
+			runs[size++] = element;
+		}
+
+		IntBuffer toBuffer() {
+			IntBuffer buffer = ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+			buffer.put(runs, 0, size);
+			buffer.flip();
+			return buffer;
+		}
+	}
+
+	/**
+	 * @return True, if the element at position <code>i</code> is an ancestor of
+	 *         the element that follows it in the order of the index
+	 */
+	private boolean contains(int i, XMLElement element) {
+		if (documentOrder)
+			return elements[i].getDepth() < element.getDepth();
+		return buffer.get(i * FIELDS + END) >= element.getEnd();
+	}
+
+	/**
+	 * Creates the index of all {@link XMLElement} annotations of a JCas.
+	 *
+	 * @param jcas The JCas
+	 * @return A new index
+	 */
+	public static StructuralIndex create(JCas jcas) {
+		List<XMLElement> elements = new ArrayList<XMLElement>(jcas.select(XMLElement.class).asList());
+		boolean ordered = GenericInlineWriter.arrange(elements, XMLElement::getIndex);
+		return new StructuralIndex(elements, ordered);
+	}
+
+	/**
+	 * Finds the innermost element that encloses the character at an offset.
+	 *
+	 * @param offset The offset
+	 * @return The position of the element that begins at or before the offset
+	 *         and ends after it, or -1
+	 */
+	public int enclosing(int offset) {
+		int low = 0, high = runs.limit() / 2;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (runs.get(2 * mid) <= offset)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return (low == 0 ? -1 : runs.get(2 * low - 1));
+	}
+
+	/**
+	 * Finds the innermost element with a tag that encloses the character at an
+	 * offset.
+	 *
+	 * @param offset The offset
+	 * @param tag    The id of the tag
+	 * @return The position of the element, or -1
+	 */
+	public int enclosing(int offset, int tag) {
+		int i = enclosing(offset);
+		if (i < 0 || tag(i) == tag)
+			return i;
+		return ancestor(i, tag);
+	}
+
+	/**
+	 * Finds the nearest ancestor with a tag.
+	 *
+	 * @param i   The position of an element
+	 * @param tag The id of the tag
+	 * @return The position of the ancestor, or -1
+	 */
+	public int ancestor(int i, int tag) {
+		for (i = parent(i); i >= 0; i = parent(i))
+			if (tag(i) == tag)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * @param ancestor   The position of an element
+	 * @param descendant The position of another element
+	 * @return True, if the second element is a descendant of the first
+	 */
+	public boolean isAncestor(int ancestor, int descendant) {
+		return ancestor < descendant && descendant < next(ancestor);
+	}
+
+	public int begin(int i) {
+		return buffer.get(i * FIELDS + BEGIN);
+	}
+
+	public int end(int i) {
+		return buffer.get(i * FIELDS + END);
+	}
+
+	/**
+	 * @param i The position of an element
+	 * @return The id of the tag of the element, or -1 if the tag is not known
+	 */
+	public int tag(int i) {
+		return buffer.get(i * FIELDS + TAG);
+	}
+
+	/**
+	 * @param i The position of an element
+	 * @return The position of the parent element, or -1 for a root
+	 */
+	public int parent(int i) {
+		return buffer.get(i * FIELDS + PARENT);
+	}
+
+	/**
+	 * @param i The position of an element
+	 * @return The number of ancestors of the element in the index
+	 */
+	public int depth(int i) {
+		return buffer.get(i * FIELDS + DEPTH);
+	}
+
+	/**
+	 * @param i The position of an element
+	 * @return The position after the last descendant of the element
+	 */
+	public int next(int i) {
+		return buffer.get(i * FIELDS + NEXT);
+	}
+
+	/**
+	 * @param i The position of an element
+	 * @return The annotation of the element
+	 */
+	public XMLElement get(int i) {
+		return elements[i];
+	}
+
+	/**
+	 * @param tag The tag name
+	 * @return The id of the tag, or -1 if no element in the index has this tag
+	 */
+	public int getTagId(String tag) {
+		Integer id = tagIds.get(tag);
+		return (id == null ? -1 : id);
+	}
+
+	/**
+	 * @param tag The id of a tag
+	 * @return The tag name
+	 */
+	public String getTag(int tag) {
+		return tags[tag];
+	}
+
+	/**
+	 * @return The number of distinct tags
+	 */
+	public int getTagCount() {
+		return tags.length;
+	}
+
+	/**
+	 * @return The number of elements in the index
+	 */
+	public int size() {
+		return elements.length;
+	}
+
+	/**
+	 * @return True, if the document order of all elements is known
+	 */
+	public boolean isDocumentOrder() {
+		return documentOrder;
+	}
+}
@@ -1,7 +1,12 @@
 package de.unistuttgart.ims.uima.io.xml;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 
 import org.apache.commons.lang3.ArrayUtils;
@@ -11,24 +16,21 @@ import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 import org.jsoup.nodes.TextNode;
 import org.jsoup.nodes.XmlDeclaration;
+import org.jsoup.select.NodeFilter;
 import org.jsoup.select.NodeVisitor;
 
 import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
 import de.unistuttgart.ims.uima.io.xml.type.XmlDeclarationAnnotation;
+import de.unistuttgart.ims.uima.io.xml.type.XmlNodeAnnotation;
 
 public class Visitor implements NodeVisitor {
 
 	protected JCasBuilder builder;
 
 	/**
-	 * Maps XML nodes to the character position where they start in the CAS
+	 * Maps XML elements to their annotations. Elements are compared by identity.
 	 */
-	protected Map<Node, Integer> beginMap = new HashMap<Node, Integer>();
-
-	/**
-	 * Maps CSS selectors to XMLelements
-	 */
-	protected Map<String, XMLElement> annotationMap = new HashMap<String, XMLElement>();
+	protected Map<Element, XMLElement> annotationMap = new IdentityHashMap<Element, XMLElement>();
 
 	/**
 	 * An array of block elements. If {@link #preserveWhitespace} is not true,
@@ -44,6 +46,56 @@ public class Visitor implements NodeVisitor {
 
 	protected Function<Element, Boolean> ignoreFunction = null;
 
+	/**
+	 * Whether ignored elements are skipped together with their content
+	 */
+	protected boolean ignoreSubtrees = false;
+
+	/**
+	 * The decisions of the ignore function for the open elements, indexed by
+	 * depth, such that the function is called only once per element
+	 */
+	protected BitSet skipped = new BitSet();
+
+	/**
+	 * The depth of the ignored element whose content is currently skipped, or -1
+	 */
+	protected int skipDepth = -1;
+
+	/**
+	 * The roots of ignored subtrees, if {@link #ignoreSubtrees} is true
+	 */
+	protected Set<Element> pruned = Collections.newSetFromMap(new IdentityHashMap<Element, Boolean>());
+
+	/**
+	 * The features that are filled in each {@link XMLElement} annotation
+	 */
+	protected Set<XmlElementFeature> features = EnumSet.allOf(XmlElementFeature.class);
+
+	/**
+	 * The number of annotated elements and of text nodes
+	 */
+	protected int elementCount = 0, textNodeCount = 0;
+
+	/**
+	 * The number of annotated nodes in document order so far, and the number of
+	 * open annotated elements
+	 */
+	protected int nodeIndex = 0, level = 0;
+
+	/**
+	 * The character position where the open nodes start in the CAS, and their
+	 * document order index, indexed by depth. Since the calls of
+	 * {@link #head(Node, int)} and {@link #tail(Node, int)} are nested, the
+	 * entries of a node are not overwritten before its tail.
+	 */
+	protected int[] begins = new int[16], indices = new int[16];
+
+	/**
+	 * The pool from which tag and class names are taken, or null
+	 */
+	protected NamePool namePool = null;
+
 	protected Visitor(JCas jcas) {
 		this.builder = new JCasBuilder(jcas);
 	}
@@ -55,55 +107,217 @@ public class Visitor implements NodeVisitor {
 
 	@Override
 	public void head(Node node, int depth) {
+		if (skipDepth >= 0)
+			return;
 		if (node instanceof TextNode) {
+			textNodeCount++;
 			if (this.preserveWhitespace)
 				builder.add(((TextNode) node).getWholeText());
 			else
 				builder.add(((TextNode) node).text());
 		} else {
 			if (node instanceof Element) {
-				if (!skip((Element) node))
-					beginMap.put(node, builder.getPosition());
+				boolean skip = skip((Element) node);
+				skipped.set(depth, skip);
+				if (skip && ignoreSubtrees) {
+					skipDepth = depth;
+					pruned.add((Element) node);
+				} else if (!skip) {
+					open(depth);
+					level++;
+				}
 			} else
-				beginMap.put(node, builder.getPosition());
+				open(depth);
+		}
+	}
+
+	private void open(int depth) {
+		if (depth >= begins.length) {
+			begins = Arrays.copyOf(begins, Math.max(2 * begins.length, depth + 1));
+			indices = Arrays.copyOf(indices, begins.length);
 		}
+		begins[depth] = builder.getPosition();
+		indices[depth] = ++nodeIndex;
 	}
 
 	@Override
 	public void tail(Node node, int depth) {
+		if (skipDepth >= 0) {
+			if (depth == skipDepth && node instanceof Element)
+				skipDepth = -1;
+			return;
+		}
 		if (node instanceof Element) {
 			Element elm = (Element) node;
-			if (!skip(elm)) {
-				XMLElement anno = builder.add(beginMap.get(node), XMLElement.class);
-				anno.setTag(elm.tagName());
-				anno.setId(elm.id());
-				anno.setSelector(elm.cssSelector());
-				anno.setAttributes(elm.attributes().html());
-				if (elm.className().isEmpty())
-					anno.setCls(elm.attr("type"));
-				else
-					anno.setCls(elm.className());
-				annotationMap.put(elm.cssSelector(), anno);
+			if (!skipped.get(depth)) {
+				XMLElement anno = builder.add(begins[depth], XMLElement.class);
+				level--;
+				setOrder(anno, depth);
+				if (features.contains(XmlElementFeature.TAG))
+					anno.setTag(name(elm.tagName()));
+				if (features.contains(XmlElementFeature.ID))
+					anno.setId(elm.id());
+				if (features.contains(XmlElementFeature.SELECTOR))
+					anno.setSelector(getSelector(elm));
+				if (features.contains(XmlElementFeature.ATTRIBUTES))
+					anno.setAttributes(elm.attributes().html());
+				if (features.contains(XmlElementFeature.CLS)) {
+					if (elm.className().isEmpty())
+						anno.setCls(name(elm.attr("type")));
+					else
+						anno.setCls(name(elm.className()));
+				}
+				register(elm, anno);
+				elementCount++;
 			}
 			if (!this.preserveWhitespace)
 				if (elm.isBlock() || ArrayUtils.contains(blockElements, elm.tagName()))
 					builder.add("\n");
 		} else if (node instanceof XmlDeclaration) {
 			XmlDeclaration xmlDecl = (XmlDeclaration) node;
-			XmlDeclarationAnnotation anno = builder.add(beginMap.get(node), XmlDeclarationAnnotation.class);
+			XmlDeclarationAnnotation anno = builder.add(begins[depth], XmlDeclarationAnnotation.class);
 			anno.setOuterHtml(xmlDecl.outerHtml());
+			setOrder(anno, depth);
+		}
+	}
+
+	/**
+	 * Adds the text of a subtree without visiting it, e.g. because its
+	 * annotations are copied from a previous version of the document. The
+	 * document order and the counters advance as if the subtree had been
+	 * visited, but no annotations are created.
+	 *
+	 * @param element The root of the subtree, which must not be ignored
+	 * @param text    The text that visiting the subtree would add, without the
+	 *                line break after a block element
+	 * @return The document order index of the root element
+	 */
+	protected int skipSubtree(Element element, String text) {
+		int index = nodeIndex + 1;
+		builder.add(text);
+		element.filter(new NodeFilter() {
+			@Override
+			public FilterResult head(Node node, int depth) {
+				if (node instanceof TextNode) {
+					textNodeCount++;
+					return FilterResult.CONTINUE;
+				}
+				if (node instanceof Element) {
+					if (skip((Element) node)) {
+						if (!ignoreSubtrees)
+							return FilterResult.CONTINUE;
+						pruned.add((Element) node);
+						return FilterResult.SKIP_ENTIRELY;
+					}
+					elementCount++;
+				}
+				nodeIndex++;
+				return FilterResult.CONTINUE;
+			}
+
+			@Override
+			public FilterResult tail(Node node, int depth) {
+				return FilterResult.CONTINUE;
+			}
+		});
+		if (!this.preserveWhitespace)
+			if (element.isBlock() || ArrayUtils.contains(blockElements, element.tagName()))
+				builder.add("\n");
+		return index;
+	}
+
+	private String name(String name) {
+		return (namePool == null ? name : namePool.intern(name));
+	}
+
+	private void setOrder(XmlNodeAnnotation anno, int depth) {
+		if (features.contains(XmlElementFeature.ORDER)) {
+			anno.setIndex(indices[depth]);
+			anno.setDepth(level);
 		}
 	}
 
+	/**
+	 * Returns a filter to traverse a DOM with this visitor. In contrast to
+	 * {@link Node#traverse(NodeVisitor)}, the children of ignored subtrees are
+	 * not visited at all.
+	 * 
+	 * @return A node filter that calls this visitor
+	 */
+	protected NodeFilter asFilter() {
+		return new NodeFilter() {
+			@Override
+			public FilterResult head(Node node, int depth) {
+				Visitor.this.head(node, depth);
+				if (skipDepth >= 0) {
+					// the tail of the ignored element is not called
+					skipDepth = -1;
+					return FilterResult.SKIP_ENTIRELY;
+				}
+				return FilterResult.CONTINUE;
+			}
+
+			@Override
+			public FilterResult tail(Node node, int depth) {
+				Visitor.this.tail(node, depth);
+				return FilterResult.CONTINUE;
+			}
+		};
+	}
+
+	/**
+	 * Computes the CSS selector that is stored in the annotation for the given
+	 * element.
+	 * 
+	 * @param elm The element
+	 * @return A CSS selector
+	 */
+	protected String getSelector(Element elm) {
+		return elm.cssSelector();
+	}
+
+	/**
+	 * Called for each newly created element annotation.
+	 * 
+	 * @param elm  The XML element
+	 * @param anno The annotation
+	 */
+	protected void register(Element elm, XMLElement anno) {
+		annotationMap.put(elm, anno);
+	}
+
 	protected JCas getJCas() {
 		builder.close();
 		return builder.getJCas();
 	}
 
-	protected Map<String, XMLElement> getAnnotationMap() {
+	protected Map<Element, XMLElement> getAnnotationMap() {
 		return annotationMap;
 	}
 
+	/**
+	 * @return The roots of all skipped subtrees
+	 */
+	protected Set<Element> getPruned() {
+		return pruned;
+	}
+
+	protected boolean isIgnoreSubtrees() {
+		return ignoreSubtrees;
+	}
+
+	protected void setIgnoreSubtrees(boolean ignoreSubtrees) {
+		this.ignoreSubtrees = ignoreSubtrees;
+	}
+
+	protected int getElementCount() {
+		return elementCount;
+	}
+
+	protected int getTextNodeCount() {
+		return textNodeCount;
+	}
+
 	protected String[] getBlockElements() {
 		return blockElements;
 	}
@@ -119,6 +333,34 @@ public class Visitor implements NodeVisitor {
 			return getIgnoreFunction().apply(e);
 	}
 
+	protected boolean isStoreSelectors() {
+		return features.contains(XmlElementFeature.SELECTOR);
+	}
+
+	protected void setStoreSelectors(boolean storeSelectors) {
+		if (storeSelectors)
+			features.add(XmlElementFeature.SELECTOR);
+		else
+			features.remove(XmlElementFeature.SELECTOR);
+	}
+
+	protected Set<XmlElementFeature> getFeatures() {
+		return features;
+	}
+
+	protected void setFeatures(Set<XmlElementFeature> features) {
+		this.features = EnumSet.noneOf(XmlElementFeature.class);
+		this.features.addAll(features);
+	}
+
+	protected NamePool getNamePool() {
+		return namePool;
+	}
+
+	protected void setNamePool(NamePool namePool) {
+		this.namePool = namePool;
+	}
+
 	protected Function<Element, Boolean> getIgnoreFunction() {
 		return ignoreFunction;
 	}
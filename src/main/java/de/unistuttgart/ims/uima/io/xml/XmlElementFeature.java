@@ -0,0 +1,44 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+
+/**
+ * The features of {@link XMLElement} annotations that the reader can fill. By
+ * default, all features are filled. Features that are not selected with
+ * {@link GenericXmlReader#setXmlElementFeatures(java.util.Set)} remain null,
+ * which saves time and memory for documents with many elements.
+ *
+ * Exporting inline XML with {@link GenericXmlWriter} requires {@link #TAG} and
+ * {@link #ATTRIBUTES}, and is exact for nested elements with identical spans
+ * only with {@link #ORDER}.
+ *
+ * @since 2.1.0
+ */
+public enum XmlElementFeature {
+	/**
+	 * The tag name
+	 */
+	TAG,
+	/**
+	 * The value of the attribute <code>id</code>
+	 */
+	ID,
+	/**
+	 * The class names, or the attribute <code>type</code> if there is no class
+	 */
+	CLS,
+	/**
+	 * A CSS selector that identifies the element. Computing it is expensive for
+	 * deep or wide documents.
+	 */
+	SELECTOR,
+	/**
+	 * All attributes, serialized as in the original document
+	 */
+	ATTRIBUTES,
+	/**
+	 * The position in document order and the depth, which are also filled for
+	 * XML declarations
+	 */
+	ORDER
+}
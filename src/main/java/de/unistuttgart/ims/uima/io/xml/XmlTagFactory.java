@@ -1,11 +1,76 @@
 package de.unistuttgart.ims.uima.io.xml;
 
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
 import de.unistuttgart.ims.uima.io.xml.type.XmlDeclarationAnnotation;
 import de.unistuttgart.ims.uima.io.xml.type.XmlNodeAnnotation;
 
+/**
+ * Renders {@link XMLElement}s as the original tags, and
+ * {@link XmlDeclarationAnnotation}s as the original declarations. The
+ * <code>append</code> methods write tags piecewise into the target. The
+ * strings returned by the <code>get</code> methods are cached for elements
+ * without attributes and for end tags, and for up to {@link #CACHE_SIZE}
+ * combinations of tag and attributes. The tag names that are used as keys of
+ * the caches are taken from a {@link NamePool}, such that the caches don't keep
+ * copies of names that have been read from other documents.
+ */
 public class XmlTagFactory implements InlineTagFactory<XmlNodeAnnotation> {
 
+	/**
+	 * The maximal number of cached begin and empty tags with attributes
+	 */
+	public static final int CACHE_SIZE = 4096;
+
+	static final String ROOT = "#root";
+
+	/**
+	 * Cached begin tags, by tag name and attributes
+	 */
+	Map<String, Map<String, String>> beginTags = new ConcurrentHashMap<String, Map<String, String>>();
+
+	/**
+	 * Cached empty tags, by tag name and attributes
+	 */
+	Map<String, Map<String, String>> emptyTags = new ConcurrentHashMap<String, Map<String, String>>();
+
+	/**
+	 * Cached end tags, by tag name
+	 */
+	Map<String, String> endTags = new ConcurrentHashMap<String, String>();
+
+	AtomicInteger cached = new AtomicInteger();
+
+	/**
+	 * The pool of tag names, or null
+	 */
+	final NamePool names;
+
+	/**
+	 * Subclasses may override the <code>get</code> methods, therefore they only
+	 * append tags directly if they override the <code>append</code> methods, too
+	 */
+	final boolean direct = (getClass() == XmlTagFactory.class);
+
+	/**
+	 * Creates a factory with its own pool of tag names.
+	 */
+	public XmlTagFactory() {
+		this(new NamePool());
+	}
+
+	/**
+	 * @param names The pool of tag names, or null
+	 * @since 2.1.0
+	 */
+	public XmlTagFactory(NamePool names) {
+		this.names = names;
+	}
+
 	@Override
 	public String getBeginTag(XmlNodeAnnotation anno) {
 		if (anno instanceof XMLElement) {
@@ -15,10 +80,9 @@ public class XmlTagFactory implements InlineTagFactory<XmlNodeAnnotation> {
 	}
 
 	protected String getBeginTag(XMLElement h) {
-		if (h.getTag() == "#root")
+		if (ROOT.equals(h.getTag()))
 			return "";
-
-		return "<" + h.getTag() + h.getAttributes() + ">";
+		return cached(beginTags, h, ">");
 	}
 
 	@Override
@@ -31,7 +95,7 @@ public class XmlTagFactory implements InlineTagFactory<XmlNodeAnnotation> {
 	}
 
 	protected String getEmptyTag(XMLElement h) {
-		return "<" + h.getTag() + h.getAttributes() + "/>";
+		return cached(emptyTags, h, "/>");
 	}
 
 	protected String getEmptyTag(XmlDeclarationAnnotation h) {
@@ -46,9 +110,85 @@ public class XmlTagFactory implements InlineTagFactory<XmlNodeAnnotation> {
 	}
 
 	protected String getEndTag(XMLElement h) {
-		if (h.getTag() == "#root")
+		if (ROOT.equals(h.getTag()))
 			return "";
-		return "</" + h.getTag() + ">";
+		String tag = String.valueOf(h.getTag());
+		String s = endTags.get(tag);
+		if (s == null) {
+			s = "</" + tag + ">";
+			endTags.put(name(tag), s);
+		}
+		return s;
+	}
+
+	@Override
+	public void appendBeginTag(XmlNodeAnnotation anno, Appendable target) throws IOException {
+		if (!direct) {
+			target.append(getBeginTag(anno));
+			return;
+		}
+		if (anno instanceof XMLElement) {
+			XMLElement h = (XMLElement) anno;
+			if (!ROOT.equals(h.getTag()))
+				appendTag(target, h, ">");
+		}
+	}
+
+	@Override
+	public void appendEmptyTag(XmlNodeAnnotation anno, Appendable target) throws IOException {
+		if (!direct) {
+			target.append(getEmptyTag(anno));
+			return;
+		}
+		if (anno instanceof XMLElement)
+			appendTag(target, (XMLElement) anno, "/>");
+		else if (anno instanceof XmlDeclarationAnnotation)
+			target.append(((XmlDeclarationAnnotation) anno).getOuterHtml());
+	}
+
+	@Override
+	public void appendEndTag(XmlNodeAnnotation anno, Appendable target) throws IOException {
+		if (!direct) {
+			target.append(getEndTag(anno));
+			return;
+		}
+		if (anno instanceof XMLElement) {
+			XMLElement h = (XMLElement) anno;
+			if (!ROOT.equals(h.getTag()))
+				target.append("</").append(h.getTag()).append('>');
+		}
+	}
+
+	private static void appendTag(Appendable target, XMLElement h, String close) throws IOException {
+		target.append('<').append(h.getTag());
+		if (h.getAttributes() != null)
+			target.append(h.getAttributes());
+		target.append(close);
+	}
+
+	private String cached(Map<String, Map<String, String>> cache, XMLElement h, String close) {
+		String tag = String.valueOf(h.getTag());
+		String attributes = (h.getAttributes() == null ? "" : h.getAttributes());
+		Map<String, String> byAttributes = cache.get(tag);
+		String s = (byAttributes == null ? null : byAttributes.get(attributes));
+		if (s != null)
+			return s;
+		s = "<" + tag + attributes + close;
+		if (attributes.isEmpty() || cached.get() < CACHE_SIZE) {
+			if (byAttributes == null) {
+				byAttributes = new ConcurrentHashMap<String, String>();
+				Map<String, String> previous = cache.putIfAbsent(name(tag), byAttributes);
+				if (previous != null)
+					byAttributes = previous;
+			}
+			if (byAttributes.putIfAbsent(attributes, s) == null && !attributes.isEmpty())
+				cached.incrementAndGet();
+		}
+		return s;
+	}
+
+	private String name(String tag) {
+		return (names == null ? tag : names.intern(tag));
 	}
 
 }
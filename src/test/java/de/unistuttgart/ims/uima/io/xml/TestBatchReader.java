@@ -0,0 +1,66 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.uima.fit.util.JCasUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+
+public class TestBatchReader {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReadAll() throws Exception {
+		List<Path> paths = new ArrayList<Path>();
+		for (int i = 0; i < 30; i++) {
+			File f = folder.newFile(i + ".xml");
+			Files.write(f.toPath(), ("<text><s>the dog " + i + "</s> <s>barks</s></text>").getBytes(StandardCharsets.UTF_8));
+			paths.add(f.toPath());
+		}
+		paths.add(folder.getRoot().toPath().resolve("missing.xml"));
+
+		GenericXmlReader<DocumentMetaData> gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		gxr.addRule("s", Sentence.class);
+
+		BatchReader<DocumentMetaData> batchReader = new BatchReader<DocumentMetaData>(gxr.compile());
+		batchReader.setThreads(3);
+		batchReader.setPool(new JCasPool(4));
+		List<Path> errors = new ArrayList<Path>();
+		batchReader.setErrorHandler((p, e) -> {
+			synchronized (errors) {
+				errors.add(p);
+			}
+		});
+
+		Map<String, String> texts = new ConcurrentHashMap<String, String>();
+		AtomicInteger active = new AtomicInteger(), maxActive = new AtomicInteger();
+		batchReader.readAll(paths.stream(), (path, jcas) -> {
+			maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+			assertEquals(2, JCasUtil.select(jcas, Sentence.class).size());
+			texts.put(path.getFileName().toString(), jcas.getDocumentText());
+			active.decrementAndGet();
+		});
+
+		assertEquals(30, texts.size());
+		assertEquals("the dog 7 barks", texts.get("7.xml"));
+		assertEquals(1, errors.size());
+		assertTrue(maxActive.get() <= 3);
+	}
+}
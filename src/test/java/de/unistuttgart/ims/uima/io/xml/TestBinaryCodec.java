@@ -0,0 +1,150 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.cas.SerialFormat;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.util.CasIOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+import de.unistuttgart.ims.uima.io.xml.type.XMLParsingDescription;
+import de.unistuttgart.ims.uima.io.xml.type.XmlNodeAnnotation;
+
+public class TestBinaryCodec {
+
+	GenericXmlReader<DocumentMetaData> gxr;
+
+	BinaryCodec codec;
+
+	@Before
+	public void setUp() {
+		gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		gxr.setPreserveWhitespace(true);
+		gxr.addRule("l", Sentence.class);
+		codec = new BinaryCodec();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		String xmlString = IOUtils.toString(getClass().getResourceAsStream("/11g1d.0.xml"), "UTF-8");
+		JCas jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+		byte[] bytes = encode(jcas);
+		JCas copy = codec.read(JCasFactory.createJCas(), Channels.newChannel(new ByteArrayInputStream(bytes)));
+
+		assertEquals(jcas.getDocumentText(), copy.getDocumentText());
+		assertEquals(JCasUtil.select(jcas, Sentence.class).size(), JCasUtil.select(copy, Sentence.class).size());
+		assertEquals(JCasUtil.select(jcas, DocumentMetaData.class).size(),
+				JCasUtil.select(copy, DocumentMetaData.class).size());
+		List<XmlNodeAnnotation> expected = new ArrayList<XmlNodeAnnotation>(
+				JCasUtil.select(jcas, XmlNodeAnnotation.class));
+		List<XmlNodeAnnotation> actual = new ArrayList<XmlNodeAnnotation>(
+				JCasUtil.select(copy, XmlNodeAnnotation.class));
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			XmlNodeAnnotation a = expected.get(i), b = actual.get(i);
+			assertEquals(a.getType().getName(), b.getType().getName());
+			assertEquals(a.getBegin(), b.getBegin());
+			assertEquals(a.getEnd(), b.getEnd());
+			assertEquals(a.getIndex(), b.getIndex());
+			assertEquals(a.getDepth(), b.getDepth());
+			assertEquals(a.getOuterHtml(), b.getOuterHtml());
+			if (a instanceof XMLElement) {
+				XMLElement x = (XMLElement) a, y = (XMLElement) b;
+				assertEquals(x.getTag(), y.getTag());
+				assertEquals(x.getId(), y.getId());
+				assertEquals(x.getCls(), y.getCls());
+				assertEquals(x.getSelector(), y.getSelector());
+				assertEquals(x.getAttributes(), y.getAttributes());
+			}
+		}
+		XMLParsingDescription description = JCasUtil.selectSingle(copy, XMLParsingDescription.class);
+		assertEquals("UTF-8", description.getEncoding());
+		assertArrayEquals(JCasUtil.selectSingle(jcas, XMLParsingDescription.class).getXmlDeclarations().toArray(),
+				description.getXmlDeclarations().toArray());
+
+		// the copy is written back to the same XML
+		StringBuilder b = new StringBuilder();
+		new GenericXmlWriter().write(copy, b);
+		assertEquals(xmlString, b.toString());
+
+		// smaller than UIMA's compressed form
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		CasIOUtils.save(jcas.getCas(), compressed, SerialFormat.COMPRESSED_FILTERED);
+		assertTrue(bytes.length < compressed.size());
+	}
+
+	@Test
+	public void testAttributes() {
+		assertEquals(Arrays.asList("a", "1", "xml:id", "x y"), BinaryCodec.split(" a=\"1\" xml:id=\"x y\""));
+		assertEquals(Arrays.asList(), BinaryCodec.split(""));
+		assertNull(BinaryCodec.split(" hidden"));
+		assertNull(BinaryCodec.split(" a=\"1"));
+	}
+
+	@Test
+	public void testSpecialValues() throws Exception {
+		JCas jcas = gxr.read(IOUtils.toInputStream("<text><p b a=\"&quot;\">😀</p><q/></text>", "UTF-8"));
+		for (XMLElement element : JCasUtil.select(jcas, XMLElement.class))
+			if (element.getTag().equals("q")) {
+				element.setSelector(element.getSelector() + " 😀");
+				element.setAttributes(null);
+			}
+		JCas copy = codec.read(JCasFactory.createJCas(), Channels.newChannel(new ByteArrayInputStream(encode(jcas))));
+		List<XMLElement> expected = new ArrayList<XMLElement>(JCasUtil.select(jcas, XMLElement.class));
+		List<XMLElement> actual = new ArrayList<XMLElement>(JCasUtil.select(copy, XMLElement.class));
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getSelector(), actual.get(i).getSelector());
+			assertEquals(expected.get(i).getAttributes(), actual.get(i).getAttributes());
+		}
+	}
+
+	@Test
+	public void testSequence() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		WritableByteChannel out = Channels.newChannel(os);
+		codec.write(gxr.read(IOUtils.toInputStream("<text><l>a</l></text>", "UTF-8")), out);
+		codec.write(gxr.read(IOUtils.toInputStream("<text><p>b</p></text>", "UTF-8")), out);
+		ReadableByteChannel in = Channels.newChannel(new ByteArrayInputStream(os.toByteArray()));
+		assertEquals("a", JCasUtil.selectSingle(codec.read(JCasFactory.createJCas(), in), Sentence.class)
+				.getCoveredText());
+		assertEquals("b", codec.read(JCasFactory.createJCas(), in).getDocumentText());
+	}
+
+	@Test(expected = IOException.class)
+	public void testVersion() throws Exception {
+		byte[] bytes = encode(gxr.read(IOUtils.toInputStream("<text>a</text>", "UTF-8")));
+		bytes[BinaryCodec.MAGIC.length] = BinaryCodec.VERSION + 1;
+		codec.read(JCasFactory.createJCas(), Channels.newChannel(new ByteArrayInputStream(bytes)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotBinary() throws Exception {
+		codec.read(JCasFactory.createJCas(), Channels.newChannel(IOUtils.toInputStream("<text>a</text>", "UTF-8")));
+	}
+
+	byte[] encode(JCas jcas) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		codec.write(jcas, Channels.newChannel(os));
+		return os.toByteArray();
+	}
+}
@@ -0,0 +1,97 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.unistuttgart.ims.uima.io.xml.type.XMLParsingDescription;
+
+public class TestEncoding {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	GenericXmlReader<DocumentMetaData> gxr;
+
+	@Before
+	public void setUp() {
+		gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		gxr.addRule("s", Sentence.class);
+	}
+
+	@Test
+	public void testDeclaredEncoding() throws UIMAException, IOException {
+		byte[] bytes = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><text><s>Grüße</s></text>"
+				.getBytes(StandardCharsets.ISO_8859_1);
+		for (boolean streaming : new boolean[] { false, true }) {
+			gxr.setStreaming(streaming);
+			JCas jcas = gxr.read(new ByteArrayInputStream(bytes));
+			assertEquals("Grüße", jcas.getDocumentText().trim());
+			assertEquals("ISO-8859-1", JCasUtil.selectSingle(jcas, XMLParsingDescription.class).getEncoding());
+		}
+	}
+
+	@Test
+	public void testByteOrderMark() throws UIMAException, IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		os.write(new byte[] { (byte) 0xFE, (byte) 0xFF });
+		os.write("<text><s>Grüße</s></text>".getBytes(StandardCharsets.UTF_16BE));
+		JCas jcas = gxr.read(new ByteArrayInputStream(os.toByteArray()));
+		assertEquals("Grüße", jcas.getDocumentText().trim());
+		assertEquals("UTF-16BE", JCasUtil.selectSingle(jcas, XMLParsingDescription.class).getEncoding());
+
+		os.reset();
+		os.write(new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF });
+		os.write("<text><s>Grüße</s></text>".getBytes(StandardCharsets.UTF_8));
+		jcas = gxr.read(new ByteArrayInputStream(os.toByteArray()));
+		assertEquals("Grüße", jcas.getDocumentText().trim());
+	}
+
+	@Test
+	public void testByteBuffer() throws UIMAException, IOException {
+		ByteBuffer buffer = ByteBuffer.wrap("<text><s>the dog</s> <s>barks</s></text>".getBytes(StandardCharsets.UTF_8));
+		JCas jcas = gxr.read(buffer);
+		assertEquals(2, JCasUtil.select(jcas, Sentence.class).size());
+		assertEquals(0, buffer.position());
+	}
+
+	@Test
+	public void testPath() throws UIMAException, IOException {
+		StringBuilder b = new StringBuilder("<?xml version=\"1.0\" encoding=\"windows-1252\"?><text>");
+		int n = 0;
+		while (b.length() < ReaderContext.MAP_THRESHOLD) {
+			b.append("<s>Grüße ").append(n++).append("</s>\n");
+		}
+		b.append("</text>");
+		File large = folder.newFile("large.xml");
+		// selectors are expensive for many siblings
+		gxr.setStoreSelectors(false);
+		Files.write(large.toPath(), b.toString().getBytes("windows-1252"));
+
+		JCas jcas = gxr.read(large.toPath());
+		assertEquals(n, JCasUtil.select(jcas, Sentence.class).size());
+		assertEquals("Grüße 0", JCasUtil.selectByIndex(jcas, Sentence.class, 0).getCoveredText());
+		assertEquals("windows-1252", JCasUtil.selectSingle(jcas, XMLParsingDescription.class).getEncoding());
+
+		File small = folder.newFile("small.xml");
+		Files.write(small.toPath(), "<text><s>Grüße</s></text>".getBytes(StandardCharsets.UTF_8));
+		jcas = gxr.read(small.toPath());
+		assertEquals("Grüße", jcas.getDocumentText().trim());
+	}
+}
@@ -1,17 +1,27 @@
 package de.unistuttgart.ims.uima.io.xml;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.uima.UIMAException;
 import org.apache.uima.fit.factory.JCasFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.cas.TOP;
+import org.jsoup.nodes.Element;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -20,7 +30,9 @@ import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_DET;
 import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_NOUN;
 import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS_VERB;
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Paragraph;
 import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.Rule;
 import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
 import de.unistuttgart.ims.uima.io.xml.type.XMLParsingDescription;
 
@@ -169,6 +181,127 @@ public class TestGenericXmlReader {
 		}
 	}
 
+	@Test
+	public void testIgnoredTags() throws UIMAException, IOException {
+		String xmlString = "<s><det><c>t</c><c>h</c><c>e</c></det><c> </c><noun n=\"1\"><c>d</c><c>o</c><c>g</c></noun> <verb>barks</verb></s>";
+		gxr.addRule("noun", POS_NOUN.class);
+		gxr.addIgnoredTags("c");
+		gxr.addIgnoredAttributes("n");
+
+		jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+
+		assertEquals("the dog barks", jcas.getDocumentText());
+		for (XMLElement e : JCasUtil.select(jcas, XMLElement.class)) {
+			assertNotEquals(e.getTag(), "c");
+			assertNotEquals(e.getTag(), "noun");
+		}
+	}
+
+	@Test
+	public void testIgnoreSubtree() throws UIMAException, IOException {
+		String xmlString = "<TEI><teiHeader><date lang=\"xx\">1900</date></teiHeader><body><s><det>the</det> <noun>dog</noun> <app><noun>cat</noun></app><verb>barks</verb></s></body></TEI>";
+		gxr.addRule("noun", POS_NOUN.class);
+		gxr.addRule("s", Sentence.class);
+		gxr.addGlobalRule("teiHeader > date", (d, e) -> d.setLanguage(e.attr("lang")));
+		gxr.addIgnoredTags("teiHeader", "app");
+		gxr.setIgnoreMode(GenericXmlReader.IgnoreMode.SUBTREE);
+
+		for (boolean streaming : new boolean[] { false, true }) {
+			gxr.setStreaming(streaming);
+			jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+
+			assertEquals("the dog barks", jcas.getDocumentText().trim());
+			assertEquals(1, JCasUtil.select(jcas, POS_NOUN.class).size());
+			assertEquals("dog", JCasUtil.selectSingle(jcas, POS_NOUN.class).getCoveredText());
+			assertEquals("xx", JCasUtil.selectSingle(jcas, DocumentMetaData.class).getLanguage());
+			for (XMLElement e : JCasUtil.select(jcas, XMLElement.class)) {
+				assertNotEquals("date", e.getTag());
+				assertNotEquals("app", e.getTag());
+			}
+		}
+	}
+
+	@Test
+	public void testIgnoreSubtreeGlobalAnnotation() throws UIMAException, IOException {
+		String xmlString = "<TEI><body><p>a<note><p>b</p></note></p><p>c</p></body></TEI>";
+		List<String> visited = new ArrayList<String>();
+		gxr.addGlobalRule("p", Paragraph.class, (a, e) -> visited.add(e.ownText()));
+		gxr.addIgnoredTags("note");
+		gxr.setIgnoreMode(GenericXmlReader.IgnoreMode.SUBTREE);
+
+		for (boolean streaming : new boolean[] { false, true }) {
+			gxr.setStreaming(streaming);
+			visited.clear();
+			jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+
+			assertFalse(jcas.getDocumentText().contains("b"));
+			// the paragraph in the note has no position, and is skipped
+			assertEquals(2, JCasUtil.select(jcas, Paragraph.class).size());
+			assertFalse(visited.contains("b"));
+		}
+	}
+
+	@Test
+	public void testNoSelectors() throws UIMAException, IOException {
+		String xmlString = "<s><det>the</det> <noun>dog</noun> <noun>barks</noun></s>";
+		gxr.addRule("noun", POS_NOUN.class);
+		gxr.setStoreSelectors(false);
+
+		jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+
+		assertEquals(2, JCasUtil.select(jcas, POS_NOUN.class).size());
+		assertEquals("barks", JCasUtil.selectByIndex(jcas, POS_NOUN.class, 1).getCoveredText());
+		for (XMLElement e : JCasUtil.select(jcas, XMLElement.class)) {
+			assertNull(e.getSelector());
+		}
+	}
+
+	@Test
+	public void testXmlElementFeatures() throws UIMAException, IOException {
+		String xmlString = "<s><det class=\"x\">the</det> <noun id=\"n1\">dog</noun></s>";
+		gxr.addRule("noun", POS_NOUN.class);
+		gxr.setXmlElementFeatures(EnumSet.of(XmlElementFeature.TAG));
+
+		jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+
+		assertEquals("dog", JCasUtil.selectSingle(jcas, POS_NOUN.class).getCoveredText());
+		for (XMLElement e : JCasUtil.select(jcas, XMLElement.class)) {
+			assertNotNull(e.getTag());
+			assertNull(e.getId());
+			assertNull(e.getCls());
+			assertNull(e.getSelector());
+			assertNull(e.getAttributes());
+		}
+	}
+
+	@Test
+	public void testCallbackPool() throws UIMAException, IOException {
+		StringBuilder b = new StringBuilder("<TEI><teiHeader><date lang=\"xx\"/></teiHeader><text>");
+		for (int i = 0; i < 500; i++)
+			b.append("<w pos=\"p").append(i).append("\">w").append(i).append("</w> ");
+		b.append("</text></TEI>");
+		gxr.setTextRootSelector("TEI > text");
+		gxr.addRule("w", POS.class, (pos, e) -> pos.setPosValue(e.attr("pos")));
+		gxr.addGlobalRule("teiHeader > date", (d, e) -> d.setLanguage(e.attr("lang")));
+		ForkJoinPool pool = new ForkJoinPool(4);
+		gxr.setCallbackPool(pool);
+
+		try {
+			jcas = gxr.read(IOUtils.toInputStream(b.toString(), "UTF-8"));
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals("xx", JCasUtil.selectSingle(jcas, DocumentMetaData.class).getLanguage());
+		int i = 0;
+		for (POS pos : JCasUtil.select(jcas, POS.class)) {
+			assertEquals("w" + i, pos.getCoveredText());
+			assertEquals("p" + i, pos.getPosValue());
+			i++;
+		}
+		assertEquals(500, i);
+	}
+
 	@Test
 	public void testHeader() throws UIMAException, IOException {
 		String xmlString = "<TEI><teiHeader></teiHeader><body><s><det><c>t</c><c>h</c><c>e</c></det><c> </c><noun><c>d</c><c>o</c><c>g</c></noun> <verb>barks</verb></s></body></TEI>";
@@ -229,4 +362,55 @@ public class TestGenericXmlReader {
         }
     }
 
+	@Test
+	public void testFeatureStructureHook() throws UIMAException, IOException {
+		String xmlString = "<text><s n=\"1\">the dog</s> <s n=\"2\">barks</s></text>";
+		List<String> calls = new ArrayList<String>();
+		gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class) {
+			@Override
+			@SuppressWarnings("deprecation")
+			protected <T extends TOP> T getFeatureStructure(JCas jcas, XMLElement hAnno, Element elm,
+					Rule<T> mapping) {
+				calls.add(elm.attr("n"));
+				return super.getFeatureStructure(jcas, hAnno, elm, mapping);
+			}
+		};
+		gxr.addRule("s", Sentence.class);
+
+		jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+		assertEquals(Arrays.asList("1", "2"), calls);
+		assertEquals(2, JCasUtil.select(jcas, Sentence.class).size());
+
+		// the compiled profile calls the hook, too
+		calls.clear();
+		jcas = gxr.compile().read(IOUtils.toInputStream(xmlString, "UTF-8"));
+		assertEquals(Arrays.asList("1", "2"), calls);
+		assertEquals(2, JCasUtil.select(jcas, Sentence.class).size());
+	}
+
+	@Test
+	public void testApplyRuleHook() throws UIMAException, IOException {
+		String xmlString = "<text><s><pos>the</pos> <pos>dog</pos></s></text>";
+		List<String> calls = new ArrayList<String>();
+		gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class) {
+			@Override
+			@SuppressWarnings("deprecation")
+			protected <T extends TOP> void applyRule(JCas jcas, Element rootElement,
+					Map<String, XMLElement> annoMap, Rule<T> mapping) {
+				calls.add(mapping.getSelector());
+				assertNotNull(annoMap.get(rootElement.select(mapping.getSelector()).first().cssSelector()));
+				if (!mapping.getSelector().equals("pos"))
+					super.applyRule(jcas, rootElement, annoMap, mapping);
+			}
+		};
+		gxr.addRule("s", Sentence.class);
+		gxr.addRule("pos", POS.class);
+		gxr.setStreaming(true);
+		assertFalse(gxr.compile().isStreaming());
+
+		jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+		assertEquals(Arrays.asList("s", "pos"), calls);
+		assertEquals(1, JCasUtil.select(jcas, Sentence.class).size());
+		assertFalse(JCasUtil.exists(jcas, POS.class));
+	}
 }
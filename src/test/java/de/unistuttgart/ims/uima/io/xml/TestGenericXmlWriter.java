@@ -1,21 +1,37 @@
 package de.unistuttgart.ims.uima.io.xml;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.uima.UIMAException;
 import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+import de.unistuttgart.ims.uima.io.xml.type.XmlNodeAnnotation;
 
 public class TestGenericXmlWriter {
 
@@ -24,6 +40,9 @@ public class TestGenericXmlWriter {
 	GenericXmlWriter gxw;
 	String xmlString;
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Before
 	public void setUp() throws UIMAException, IOException {
 		xmlString = "<text><s><pos pos=\"det\">the</pos> <pos pos=\"nn\">dog</pos> <pos pos=\"v\">barks</pos></s> <s><pos>The</pos> <pos>cat</pos> <pos>too</pos></s></text>";
@@ -59,4 +78,125 @@ public class TestGenericXmlWriter {
 		boas.write("bla");
 		assertTrue(true);
 	}
+
+	@Test
+	public void testChannel() throws IOException {
+		ByteArrayOutputStream boas = new ByteArrayOutputStream();
+		gxw.write(jcas, Channels.newChannel(boas), StandardCharsets.UTF_8);
+		assertEquals(xmlString, boas.toString("UTF-8"));
+
+		boas.reset();
+		gxw.write(jcas, Channels.newChannel(boas), StandardCharsets.UTF_16LE, 3, 8);
+		assertEquals(" <pos pos=\"nn\">dog</pos> ", boas.toString("UTF-16LE"));
+	}
+
+	@Test
+	public void testTagFactory() throws UnsupportedEncodingException {
+		XmlTagFactory factory = new XmlTagFactory();
+		XMLElement pos = null;
+		for (XMLElement element : JCasUtil.select(jcas, XMLElement.class))
+			if (element.getTag().equals("pos"))
+				pos = element;
+		assertEquals("<pos>", factory.getBeginTag(pos));
+		assertSame(factory.getBeginTag(pos), factory.getBeginTag((XmlNodeAnnotation) pos));
+		assertSame(factory.getEndTag(pos), factory.getEndTag((XmlNodeAnnotation) pos));
+
+		// subclasses that override the String methods are still used
+		gxw.setTagFactory(new XmlTagFactory() {
+			@Override
+			protected String getBeginTag(XMLElement h) {
+				return h.getTag().equals("s") ? "<s>\n" : super.getBeginTag(h);
+			}
+		});
+		ByteArrayOutputStream boas = new ByteArrayOutputStream();
+		gxw.write(jcas, boas);
+		assertEquals(xmlString.replace("<s>", "<s>\n"), boas.toString("UTF-8"));
+	}
+
+	@Test
+	public void testBoundaryIndex() throws UIMAException, IOException {
+		xmlString = "<text><p><s><hi><seg>a b</seg></hi><lb/> c</s></p> <p><s>d<pb/></s><s/></p></text>";
+		checkWindows(gxr.read(IOUtils.toInputStream(xmlString, "UTF-8")), true);
+
+		gxr.setXmlElementFeatures(EnumSet.of(XmlElementFeature.TAG, XmlElementFeature.ATTRIBUTES));
+		checkWindows(gxr.read(IOUtils.toInputStream(xmlString, "UTF-8")), false);
+	}
+
+	@Test
+	public void testModifiedOffsets() throws UIMAException, IOException {
+		xmlString = "<text><a>aa</a> <b>bb</b></text>";
+		jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+		// swap the spans, the document order is no longer the order by begin
+		for (XMLElement element : new ArrayList<XMLElement>(JCasUtil.select(jcas, XMLElement.class)))
+			if (element.getTag().equals("a")) {
+				element.setBegin(3);
+				element.setEnd(5);
+			} else if (element.getTag().equals("b")) {
+				element.setBegin(0);
+				element.setEnd(2);
+			}
+		checkWindows(jcas, false);
+		StringBuilder b = new StringBuilder();
+		gxw.write(jcas, b, 0, 5);
+		assertEquals("<text><b>aa</b> <a>bb</a></text>", b.toString());
+	}
+
+	@Test
+	public void testStraddlingWindow() throws UIMAException, IOException {
+		checkWindow("<r><A>aaaaa</A><B><C>ccc</C>dd</B></r>", 0, 8, "<A>aaaaa</A><C>ccc</C>");
+		checkWindow("<r><A/><B><C>ccc</C>dd</B></r>", 0, 3, "<A/><C>ccc</C>");
+		checkWindow("<r><A>aa</A><B><e/>bbb</B></r>", 0, 3, "<A>aa</A><e/>b");
+		checkWindow("<r><A>aa<e/></A><B>bbb</B></r>", 0, 3, "<A>aa<e/></A>b");
+		checkWindow("<r><B>bb<C>cc<e/></C>d</B></r>", 2, 4, "<C>cc<e/></C>");
+	}
+
+	void checkWindow(String xml, int begin, int end, String expected) throws UIMAException, IOException {
+		JCas jcas = gxr.read(IOUtils.toInputStream(xml, "UTF-8"));
+		StringBuilder b = new StringBuilder();
+		gxw.write(jcas, b, begin, end);
+		assertEquals(expected, b.toString());
+		b = new StringBuilder();
+		gxw.write(gxw.index(jcas), b, begin, end);
+		assertEquals(expected, b.toString());
+	}
+
+	void checkWindows(JCas jcas, boolean documentOrder) {
+		BoundaryIndex<XmlNodeAnnotation> index = gxw.index(jcas);
+		assertEquals(documentOrder, index.isDocumentOrder());
+		assertEquals(JCasUtil.select(jcas, XmlNodeAnnotation.class).size(), index.size());
+		int length = jcas.getDocumentText().length();
+		for (int begin = 0; begin <= length; begin++)
+			for (int end = begin; end <= length; end++) {
+				StringBuilder expected = new StringBuilder(), actual = new StringBuilder();
+				gxw.write(jcas, expected, begin, end);
+				gxw.write(index, actual, begin, end);
+				assertEquals(expected.toString(), actual.toString());
+			}
+		if (documentOrder) {
+			StringBuilder b = new StringBuilder();
+			gxw.write(index, b, 0, length);
+			assertEquals(xmlString, b.toString());
+		}
+	}
+
+	@Test
+	public void testParallel() throws Exception {
+		xmlString = IOUtils.toString(getClass().getResourceAsStream("/11g1d.0.xml"), StandardCharsets.UTF_8);
+		jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+		gxw.setSegmentSize(1000);
+		assertTrue(Segment.split(gxw.events(gxw.index(jcas)), jcas.getDocumentText().length(), 1000).size() > 10);
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		ByteArrayOutputStream boas = new ByteArrayOutputStream();
+		gxw.write(jcas, Channels.newChannel(boas), StandardCharsets.UTF_8, pool);
+		assertEquals(xmlString, boas.toString("UTF-8"));
+
+		List<Path> paths = gxw.write(jcas, folder.getRoot().toPath(), "part-", StandardCharsets.UTF_8, pool);
+		assertTrue(paths.size() > 10);
+		assertEquals("part-00000.xml", paths.get(0).getFileName().toString());
+		DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		for (Path path : paths)
+			assertEquals("TEI", builder.parse(path.toFile()).getDocumentElement().getTagName());
+		pool.shutdown();
+	}
 }
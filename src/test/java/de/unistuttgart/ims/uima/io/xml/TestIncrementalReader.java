@@ -0,0 +1,256 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.jcas.tcas.Annotation;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Paragraph;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.IgnoreMode;
+import de.unistuttgart.ims.uima.io.xml.IncrementalReader.Change;
+import de.unistuttgart.ims.uima.io.xml.IncrementalReader.Update;
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+
+public class TestIncrementalReader {
+
+	IncrementalReader<DocumentMetaData> reader;
+
+	@Before
+	public void setUp() {
+		GenericXmlReader<DocumentMetaData> gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		gxr.setTextRootSelector("TEI > text");
+		gxr.setPreserveWhitespace(true);
+		gxr.addRule("s", Sentence.class);
+		reader = new IncrementalReader<DocumentMetaData>(gxr.compile());
+	}
+
+	Update read(String header, String body) throws IOException, UIMAException {
+		return reader.read(IOUtils.toInputStream(
+				"<TEI><teiHeader>" + header + "</teiHeader><text>" + body + "</text></TEI>", "UTF-8"));
+	}
+
+	static final String BODY = "<p xml:id=\"p0\"><s>one</s></p><p xml:id=\"p1\"><s>two</s></p><p xml:id=\"p2\"><s>three</s></p>";
+
+	@Test
+	public void testChanges() throws IOException, UIMAException {
+		Update update = read("h", "<p xml:id=\"p0\"><s>one</s></p><p xml:id=\"p1\"><s>two</s></p><p xml:id=\"p2\"><s>three</s></p>");
+		assertEquals(1, update.getChanges().size());
+		assertEquals(11, update.getChanges().get(0).getEnd());
+
+		// unchanged
+		update = read("h", "<p xml:id=\"p0\"><s>one</s></p><p xml:id=\"p1\"><s>two</s></p><p xml:id=\"p2\"><s>three</s></p>");
+		assertTrue(update.getChanges().isEmpty());
+		assertFalse(update.isOutsideChanged());
+
+		// a changed text node
+		update = read("h", "<p xml:id=\"p0\"><s>one</s></p><p xml:id=\"p1\"><s>twenty</s></p><p xml:id=\"p2\"><s>three</s></p>");
+		assertEquals(1, update.getChanges().size());
+		Change change = update.getChanges().get(0);
+		assertEquals(3, change.getOldBegin());
+		assertEquals(6, change.getOldEnd());
+		assertEquals(3, change.getBegin());
+		assertEquals(9, change.getEnd());
+		assertEquals("twenty", update.getJCas().getDocumentText().substring(change.getBegin(), change.getEnd()));
+		assertEquals(0, update.map(0));
+		assertEquals(-1, update.map(4));
+		assertEquals(9, update.map(6));
+		assertEquals(3, JCasUtil.select(update.getJCas(), Sentence.class).size());
+
+		// a removed paragraph, and a changed header
+		update = read("header", "<p xml:id=\"p0\"><s>one</s></p><p xml:id=\"p2\"><s>three</s></p>");
+		assertTrue(update.isOutsideChanged());
+		assertEquals(1, update.getChanges().size());
+		change = update.getChanges().get(0);
+		assertEquals(3, change.getOldBegin());
+		assertEquals(9, change.getOldEnd());
+		assertEquals(3, change.getBegin());
+		assertEquals(3, change.getEnd());
+		assertEquals(3, update.map(9));
+	}
+
+	@Test
+	public void testInsert() throws IOException, UIMAException {
+		read("h", BODY);
+		Update update = read("h",
+				"<p xml:id=\"p0\"><s>one</s></p><p xml:id=\"px\"><s>new</s></p><p xml:id=\"p1\"><s>two</s></p><p xml:id=\"p2\"><s>three</s></p>");
+		assertFalse(update.isOutsideChanged());
+		assertEquals(1, update.getChanges().size());
+		Change change = update.getChanges().get(0);
+		assertEquals(3, change.getOldBegin());
+		assertEquals(3, change.getOldEnd());
+		assertEquals(3, change.getBegin());
+		assertEquals(6, change.getEnd());
+		assertEquals("new", update.getJCas().getDocumentText().substring(change.getBegin(), change.getEnd()));
+		assertEquals(0, update.map(0));
+		assertEquals(9, update.map(6));
+		assertEquals(4, JCasUtil.select(update.getJCas(), Sentence.class).size());
+	}
+
+	@Test
+	public void testDelete() throws IOException, UIMAException {
+		read("h", BODY);
+		Update update = read("h", "<p xml:id=\"p1\"><s>two</s></p><p xml:id=\"p2\"><s>three</s></p>");
+		assertFalse(update.isOutsideChanged());
+		assertEquals(1, update.getChanges().size());
+		Change change = update.getChanges().get(0);
+		assertEquals(0, change.getOldBegin());
+		assertEquals(3, change.getOldEnd());
+		assertEquals(0, change.getBegin());
+		assertEquals(0, change.getEnd());
+		assertEquals(-1, update.map(1));
+		assertEquals(3, update.map(6));
+	}
+
+	@Test
+	public void testOutside() throws IOException, UIMAException {
+		read("h", BODY);
+		Update update = read("a new header", BODY);
+		assertTrue(update.isOutsideChanged());
+		assertTrue(update.getChanges().isEmpty());
+		assertEquals(6, update.map(6));
+
+		update = read("a new header", BODY);
+		assertFalse(update.isOutsideChanged());
+		assertTrue(update.getChanges().isEmpty());
+	}
+
+	@Test
+	public void testReset() throws IOException, UIMAException {
+		read("h", BODY);
+		reader.reset();
+		Update update = read("h", BODY);
+		assertTrue(update.isOutsideChanged());
+		assertEquals(1, update.getChanges().size());
+		Change change = update.getChanges().get(0);
+		assertEquals(0, change.getOldBegin());
+		assertEquals(0, change.getOldEnd());
+		assertEquals(0, change.getBegin());
+		assertEquals(11, change.getEnd());
+
+		update = read("h", BODY);
+		assertFalse(update.isOutsideChanged());
+		assertTrue(update.getChanges().isEmpty());
+	}
+
+	@Test
+	public void testCopied() throws IOException, UIMAException {
+		AtomicInteger callbacks = new AtomicInteger();
+		GenericXmlReader<DocumentMetaData> gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		gxr.setTextRootSelector("TEI > text");
+		gxr.addRule("s", Sentence.class);
+		gxr.addRule("w", POS.class, (pos, elm) -> {
+			callbacks.incrementAndGet();
+			pos.setPosValue(elm.attr("pos"));
+		});
+		gxr.addRule("p:first-child", Paragraph.class);
+		reader = new IncrementalReader<DocumentMetaData>(gxr.compile());
+
+		String p0 = "<p xml:id=\"p0\"><s><w pos=\"a\">one</w></s></p>";
+		String p2 = "<p xml:id=\"p2\"><s><w pos=\"c\">three</w> <w pos=\"d\">four</w></s></p>";
+		Update update = read("h", p0 + "<p xml:id=\"p1\"><s><w pos=\"b\">two</w></s></p>" + p2);
+		assertEquals(4, callbacks.getAndSet(0));
+		assertEquals(0, update.getCopied());
+		// a change made downstream
+		JCasUtil.selectByIndex(update.getJCas(), POS.class, 3).setPosValue("edited");
+
+		// a new first paragraph, and a changed word
+		String body = "<p xml:id=\"px\"><s><w pos=\"x\">new</w></s></p>" + p0
+				+ "<p xml:id=\"p1\"><s><w pos=\"b\">twenty</w></s></p>" + p2;
+		update = read("h", body);
+		assertEquals(2, callbacks.getAndSet(0));
+		// 7 elements, 2 sentences and 3 parts of speech in p0 and p2
+		assertEquals(12, update.getCopied());
+		assertEquals("edited", JCasUtil.selectByIndex(update.getJCas(), POS.class, 4).getPosValue());
+		assertEquals("four", JCasUtil.selectByIndex(update.getJCas(), POS.class, 4).getCoveredText());
+		// the previous first paragraph is no longer matched
+		assertEquals(1, JCasUtil.select(update.getJCas(), Paragraph.class).size());
+		assertEquals("new", JCasUtil.selectSingle(update.getJCas(), Paragraph.class).getCoveredText().trim());
+		assertSameAsRead(gxr, "h", body, update.getJCas());
+		callbacks.set(0);
+
+		// the copies are copied again, the changed word is rebuilt
+		body = "<p xml:id=\"px\"><s><w pos=\"x\">new</w></s></p>" + p0
+				+ "<p xml:id=\"p1\"><s><w pos=\"b\">twenty</w></s></p>"
+				+ "<p xml:id=\"p2\"><s><w pos=\"c\">three</w> <w pos=\"d\">five</w></s></p>";
+		update = read("h", body);
+		assertEquals(1, callbacks.getAndSet(0));
+		assertEquals("d", JCasUtil.selectByIndex(update.getJCas(), POS.class, 4).getPosValue());
+		assertSameAsRead(gxr, "h", body, update.getJCas());
+		callbacks.set(0);
+
+		// nothing changed
+		update = read("h", body);
+		assertEquals(0, callbacks.getAndSet(0));
+		assertSameAsRead(gxr, "h", body, update.getJCas());
+	}
+
+	@Test
+	public void testIgnored() throws IOException, UIMAException {
+		for (IgnoreMode mode : IgnoreMode.values()) {
+			GenericXmlReader<DocumentMetaData> gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+			gxr.setTextRootSelector("TEI > text");
+			gxr.setIgnoreFunction(e -> e.tagName().equals("note"));
+			gxr.setIgnoreMode(mode);
+			gxr.addRule("s", Sentence.class);
+			reader = new IncrementalReader<DocumentMetaData>(gxr.compile());
+
+			String p1 = "<p xml:id=\"p1\"><s>two<note><s>n</s></note></s><?pi x?></p>";
+			String p2 = "<p xml:id=\"p2\"><s>three<note>m</note></s> <s>four</s></p>";
+			read("h", "<p xml:id=\"p0\"><s>one</s></p>" + p1 + p2);
+			String body = "<p xml:id=\"p0\"><s>zero</s></p>" + p1 + p2;
+			Update update = read("h", body);
+			assertTrue(update.getCopied() > 0);
+			assertSameAsRead(gxr, "h", body, update.getJCas());
+		}
+	}
+
+	/**
+	 * Compares an incrementally read JCas with a complete read
+	 */
+	void assertSameAsRead(GenericXmlReader<DocumentMetaData> gxr, String header, String body, JCas jcas)
+			throws IOException, UIMAException {
+		JCas expected = gxr.read(IOUtils.toInputStream(
+				"<TEI><teiHeader>" + header + "</teiHeader><text>" + body + "</text></TEI>", "UTF-8"));
+		assertEquals(expected.getDocumentText(), jcas.getDocumentText());
+		List<XMLElement> expectedElements = new ArrayList<XMLElement>(JCasUtil.select(expected, XMLElement.class));
+		List<XMLElement> elements = new ArrayList<XMLElement>(JCasUtil.select(jcas, XMLElement.class));
+		assertEquals(expectedElements.size(), elements.size());
+		for (int i = 0; i < elements.size(); i++) {
+			XMLElement e = expectedElements.get(i), a = elements.get(i);
+			assertEquals(e.getBegin(), a.getBegin());
+			assertEquals(e.getEnd(), a.getEnd());
+			assertEquals(e.getTag(), a.getTag());
+			assertEquals(e.getId(), a.getId());
+			assertEquals(e.getSelector(), a.getSelector());
+			assertEquals(e.getIndex(), a.getIndex());
+			assertEquals(e.getDepth(), a.getDepth());
+		}
+		assertSameOffsets(JCasUtil.select(expected, Sentence.class), JCasUtil.select(jcas, Sentence.class));
+		assertSameOffsets(JCasUtil.select(expected, POS.class), JCasUtil.select(jcas, POS.class));
+		assertSameOffsets(JCasUtil.select(expected, Paragraph.class), JCasUtil.select(jcas, Paragraph.class));
+	}
+
+	static void assertSameOffsets(Iterable<? extends Annotation> expected, Iterable<? extends Annotation> actual) {
+		List<String> e = new ArrayList<String>(), a = new ArrayList<String>();
+		for (Annotation annotation : expected)
+			e.add(annotation.getBegin() + "-" + annotation.getEnd());
+		for (Annotation annotation : actual)
+			a.add(annotation.getBegin() + "-" + annotation.getEnd());
+		assertEquals(e, a);
+	}
+}
@@ -0,0 +1,127 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+
+public class TestNamePool {
+
+	NamePool pool;
+
+	@Before
+	public void setUp() {
+		pool = new NamePool(2, 8);
+	}
+
+	@Test
+	public void testIntern() {
+		String p = new String("p");
+		assertSame(p, pool.intern(p));
+		assertSame(p, pool.intern(new String("p")));
+		assertEquals(1, pool.getSize());
+		assertEquals(1, pool.getHits());
+		assertEquals(1, pool.getMisses());
+		assertEquals(NamePool.sizeOf(p), pool.getSavedBytes());
+		assertNull(pool.intern(null));
+	}
+
+	@Test
+	public void testBounds() {
+		String tooLong = new String("paragraphs");
+		assertSame(tooLong, pool.intern(tooLong));
+		assertEquals(0, pool.getSize());
+
+		pool.intern("p");
+		pool.intern("hi");
+		String s = new String("s");
+		assertSame(s, pool.intern(s));
+		assertNotSame(s, pool.intern(new String("s")));
+		assertEquals(2, pool.getSize());
+
+		pool.clear();
+		assertEquals(0, pool.getSize());
+		assertEquals(0, pool.getSavedBytes());
+	}
+
+	@Test
+	public void testSharedAcrossDocuments() throws UIMAException, IOException {
+		pool = new NamePool(16, 16);
+		GenericXmlReader<DocumentMetaData> gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		gxr.setNamePool(pool);
+		List<XMLElement> elements = new ArrayList<XMLElement>();
+		for (int i = 0; i < 2; i++) {
+			JCas jcas = gxr.read(IOUtils.toInputStream("<text><p type=\"verse\">a</p></text>", "UTF-8"));
+			elements.add(paragraph(jcas));
+		}
+		assertEquals("p", elements.get(0).getTag());
+		assertEquals("verse", elements.get(0).getCls());
+		assertSame(elements.get(0).getTag(), elements.get(1).getTag());
+		assertSame(elements.get(0).getCls(), elements.get(1).getCls());
+		assertTrue(pool.getSavedBytes() > 0);
+	}
+
+	@Test
+	public void testStreaming() throws UIMAException, IOException {
+		pool = new NamePool(16, 16);
+		GenericXmlReader<DocumentMetaData> gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		gxr.setNamePool(pool);
+		gxr.setStreaming(true);
+		List<XMLElement> elements = new ArrayList<XMLElement>();
+		for (int i = 0; i < 2; i++) {
+			JCas jcas = gxr.read(IOUtils.toInputStream("<text><p xml:id=\"p" + i + "\">a</p></text>", "UTF-8"));
+			elements.add(paragraph(jcas));
+		}
+		assertSame(elements.get(0).getTag(), elements.get(1).getTag());
+		assertEquals(" xml:id=\"p1\"", elements.get(1).getAttributes());
+	}
+
+	@Test
+	public void testOwnPoolByDefault() throws UIMAException, IOException {
+		GenericXmlReader<DocumentMetaData> gxr1 = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		GenericXmlReader<DocumentMetaData> gxr2 = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		assertNotNull(gxr1.getNamePool());
+		assertNotSame(NamePool.SHARED, gxr1.getNamePool());
+		assertNotSame(gxr1.getNamePool(), gxr2.getNamePool());
+		assertSame(gxr1.getNamePool(), gxr1.compile().getNamePool());
+
+		long shared = NamePool.SHARED.getMisses() + NamePool.SHARED.getHits();
+		gxr1.read(IOUtils.toInputStream("<text><p>a</p></text>", "UTF-8"));
+		assertTrue(gxr1.getNamePool().getSize() > 0);
+		assertEquals(0, gxr2.getNamePool().getSize());
+		assertEquals(shared, NamePool.SHARED.getMisses() + NamePool.SHARED.getHits());
+		assertNotSame(NamePool.SHARED, new XmlTagFactory().names);
+	}
+
+	@Test
+	public void testWithoutPool() throws UIMAException, IOException {
+		GenericXmlReader<DocumentMetaData> gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		gxr.setNamePool(null);
+		JCas jcas = gxr.read(IOUtils.toInputStream("<text><p>a</p></text>", "UTF-8"));
+		assertEquals("p", paragraph(jcas).getTag());
+		assertNull(gxr.compile().getNamePool());
+	}
+
+	static XMLElement paragraph(JCas jcas) {
+		for (XMLElement element : JCasUtil.select(jcas, XMLElement.class))
+			if ("p".equals(element.getTag()))
+				return element;
+		return null;
+	}
+}
@@ -0,0 +1,82 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+
+public class TestParseCache {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCache() throws Exception {
+		Path file = folder.newFile("a.xml").toPath();
+		Files.write(file, "<text><s>the dog</s> <s>barks</s></text>".getBytes(StandardCharsets.UTF_8));
+		Path directory = folder.getRoot().toPath().resolve("cache");
+
+		GenericXmlReader<DocumentMetaData> gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		gxr.addRule("s", Sentence.class);
+		ParseCache<DocumentMetaData> cache = new ParseCache<DocumentMetaData>(gxr.compile(), directory, 1L << 20);
+
+		JCas jcas = cache.read(file);
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertTrue(cache.getSize() > 0);
+
+		// a new cache finds the entry of the previous one
+		cache = new ParseCache<DocumentMetaData>(gxr.compile(), directory, 1L << 20);
+		JCas cached = cache.read(file);
+		assertEquals(1, cache.getHits());
+		assertEquals(jcas.getDocumentText(), cached.getDocumentText());
+		assertEquals(2, JCasUtil.select(cached, Sentence.class).size());
+
+		// a different configuration has a different key
+		gxr.setPreserveWhitespace(true);
+		assertFalse(Arrays.equals(ParseCache.fingerprint(cache.profile), ParseCache.fingerprint(gxr.compile())));
+		cache.setVersion("2");
+		cache.read(file);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		GenericXmlReader<DocumentMetaData> gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		Path directory = folder.getRoot().toPath().resolve("cache");
+		ParseCache<DocumentMetaData> cache = new ParseCache<DocumentMetaData>(gxr.compile(), directory, 1L << 20);
+		Path file = folder.newFile("0.xml").toPath();
+		Files.write(file, "<text>0</text>".getBytes(StandardCharsets.UTF_8));
+		cache.read(file);
+		long entrySize = cache.getSize();
+
+		cache = new ParseCache<DocumentMetaData>(gxr.compile(), directory, 3 * entrySize + entrySize / 2);
+		for (int i = 1; i < 5; i++) {
+			Files.write(file, ("<text>" + i + "</text>").getBytes(StandardCharsets.UTF_8));
+			cache.read(file);
+		}
+		assertTrue(cache.getSize() <= cache.getMaxBytes());
+		assertEquals(3, cache.entries.size());
+
+		// the oldest entries are gone, the newest one is still there
+		Files.write(file, "<text>4</text>".getBytes(StandardCharsets.UTF_8));
+		cache.read(file);
+		Files.write(file, "<text>0</text>".getBytes(StandardCharsets.UTF_8));
+		cache.read(file);
+		assertEquals(1, cache.getHits());
+	}
+}
@@ -0,0 +1,121 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.UIMAException;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Token;
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.Rule;
+
+public class TestReaderListener {
+
+	static final String XML = "<text><s><w>the</w> <w>dog</w></s> <s><w>barks</w></s></text>";
+
+	GenericXmlReader<DocumentMetaData> gxr;
+
+	Map<ReaderListener.Stage, Long> stages;
+	Map<String, Integer> matches;
+	Map<String, Long> callbacks;
+	int[] nodes;
+
+	@Before
+	public void setUp() {
+		gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		gxr.addRule("s", Sentence.class);
+		gxr.addRule("w", Token.class, (token, xmlElement) -> {
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		stages = new EnumMap<ReaderListener.Stage, Long>(ReaderListener.Stage.class);
+		matches = new HashMap<String, Integer>();
+		callbacks = new HashMap<String, Long>();
+		nodes = new int[2];
+		gxr.setListener(new ReaderListener() {
+			@Override
+			public void stage(Stage stage, long nanos) {
+				stages.put(stage, nanos);
+			}
+
+			@Override
+			public void nodes(int elements, int textNodes) {
+				nodes[0] = elements;
+				nodes[1] = textNodes;
+			}
+
+			@Override
+			public void rule(int position, Rule<?> rule, int m, long selectorNanos, long callbackNanos) {
+				matches.put(rule.getSelector(), m);
+				callbacks.put(rule.getSelector(), callbackNanos);
+			}
+		});
+	}
+
+	@Test
+	public void testDom() throws UIMAException, IOException {
+		gxr.read(IOUtils.toInputStream(XML, "UTF-8"));
+
+		assertEquals(5, stages.size());
+		assertTrue(stages.get(ReaderListener.Stage.READ) >= stages.get(ReaderListener.Stage.APPLY));
+		// the document itself is annotated, too
+		assertEquals(7, nodes[0]);
+		assertEquals(5, nodes[1]);
+		assertEquals(2, (int) matches.get("s"));
+		assertEquals(3, (int) matches.get("w"));
+		assertEquals(0L, (long) callbacks.get("s"));
+		assertTrue(callbacks.get("w") >= 3000000L);
+	}
+
+	@Test
+	public void testStreaming() throws UIMAException, IOException {
+		gxr.setStreaming(true);
+		gxr.read(IOUtils.toInputStream(XML, "UTF-8"));
+
+		assertEquals(1, stages.size());
+		assertTrue(stages.containsKey(ReaderListener.Stage.READ));
+		assertEquals(7, nodes[0]);
+		assertEquals(2, (int) matches.get("s"));
+		assertEquals(3, (int) matches.get("w"));
+		assertTrue(callbacks.get("w") >= 3000000L);
+	}
+
+	@Test
+	public void testMetricsListener() throws UIMAException, IOException {
+		Map<String, Long> values = new HashMap<String, Long>();
+		gxr.setListener(new MetricsListener((name, value) -> values.merge(name, value, Long::sum)));
+		gxr.read(IOUtils.toInputStream(XML, "UTF-8"));
+		gxr.read(IOUtils.toInputStream(XML, "UTF-8"));
+
+		assertEquals(6L, (long) values.get("gxr.rule.1.w.matches"));
+		assertEquals(14L, (long) values.get("gxr.elements"));
+		assertTrue(values.containsKey("gxr.stage.parse.nanos"));
+		assertTrue(values.containsKey("gxr.rule.0.s.selector.nanos"));
+	}
+
+	@Test
+	public void testMetricNames() throws UIMAException, IOException {
+		Map<String, Long> values = new HashMap<String, Long>();
+		gxr.addRule("text > s:has([n])", Sentence.class);
+		gxr.addRule("s", Sentence.class);
+		gxr.setListener(new MetricsListener((name, value) -> values.merge(name, value, Long::sum)));
+		gxr.read(IOUtils.toInputStream(XML, "UTF-8"));
+
+		assertEquals(2L, (long) values.get("gxr.rule.0.s.matches"));
+		assertEquals(0L, (long) values.get("gxr.rule.2.text_s_has_n.matches"));
+		assertEquals(2L, (long) values.get("gxr.rule.3.s.matches"));
+	}
+}
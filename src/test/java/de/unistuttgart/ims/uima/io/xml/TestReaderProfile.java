@@ -0,0 +1,79 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+
+public class TestReaderProfile {
+
+	GenericXmlReader<DocumentMetaData> gxr;
+
+	@Before
+	public void setUp() {
+		gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		gxr.addRule("s", Sentence.class);
+		gxr.addRule("pos", POS.class, (anno, xmlElement) -> {
+			if (xmlElement.hasAttr("pos"))
+				anno.setPosValue(xmlElement.attr("pos"));
+		});
+	}
+
+	@Test
+	public void testConcurrentReads() throws Exception {
+		ReaderProfile<DocumentMetaData> profile = gxr.compile();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<JCas>> futures = new ArrayList<Future<JCas>>();
+		for (int i = 0; i < 20; i++) {
+			String xmlString = "<text><s><pos pos=\"det\">the</pos> <pos pos=\"nn\">dog" + i
+					+ "</pos></s> <s><pos>barks</pos></s></text>";
+			futures.add(executor.submit(() -> profile.read(IOUtils.toInputStream(xmlString, "UTF-8"))));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			JCas jcas = futures.get(i).get();
+			assertEquals("the dog" + i + " barks", jcas.getDocumentText());
+			assertEquals(2, JCasUtil.select(jcas, Sentence.class).size());
+			assertEquals(3, JCasUtil.select(jcas, POS.class).size());
+			assertEquals("nn", JCasUtil.selectByIndex(jcas, POS.class, 1).getPosValue());
+		}
+		executor.shutdown();
+	}
+
+	@Test
+	public void testProfileIsSnapshot() throws UIMAException, IOException {
+		ReaderProfile<DocumentMetaData> profile = gxr.compile();
+		gxr.setTextRootSelector("body");
+		gxr.addRule("text", DocumentMetaData.class);
+
+		assertEquals(2, profile.getRules().size());
+		assertEquals(null, profile.getTextRootSelector());
+		assertEquals(3, gxr.compile().getRules().size());
+	}
+
+	@Test
+	public void testIdsDoNotLeak() throws UIMAException, IOException {
+		gxr.read(IOUtils.toInputStream("<text><s xml:id=\"s1\">the dog</s></text>", "UTF-8"));
+		assertTrue(gxr.exists("s1"));
+
+		gxr.read(IOUtils.toInputStream("<text><s xml:id=\"s2\">the cat</s></text>", "UTF-8"));
+		assertFalse(gxr.exists("s1"));
+		assertTrue(gxr.exists("s2"));
+	}
+}
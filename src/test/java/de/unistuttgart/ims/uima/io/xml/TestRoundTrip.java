@@ -5,6 +5,7 @@ import static org.junit.Assert.assertEquals;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.EnumSet;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.uima.UIMAException;
@@ -57,6 +58,37 @@ public class TestRoundTrip {
 		assertEquals(xmlString, s);
 	}
 
+	@Test
+	public void test5() throws IOException, UIMAException {
+		xmlString = "<text><a><b><c>x</c></b></a> <d><e>y</e><f>z</f></d><g><h>w</h></g></text>";
+		jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+		ByteArrayOutputStream boas = new ByteArrayOutputStream();
+		gxw.write(jcas, boas);
+		String s = boas.toString("UTF-8");
+		assertEquals(xmlString, s);
+	}
+
+	@Test
+	public void test6() throws IOException, UIMAException {
+		xmlString = "<text><hi><seg>x</seg></hi> <p><lb/></p>a<pb/><div>b<milestone/></div><c><e/></c></text>";
+		jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+		ByteArrayOutputStream boas = new ByteArrayOutputStream();
+		gxw.write(jcas, boas);
+		String s = boas.toString("UTF-8");
+		assertEquals(xmlString, s);
+	}
+
+	@Test
+	public void testWithoutOrder() throws IOException, UIMAException {
+		gxr.setXmlElementFeatures(EnumSet.of(XmlElementFeature.TAG, XmlElementFeature.ATTRIBUTES));
+		xmlString = "<text><hi><seg>x</seg></hi> <d><e>y</e><f>z</f></d></text>";
+		jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+		ByteArrayOutputStream boas = new ByteArrayOutputStream();
+		gxw.write(jcas, boas);
+		String s = boas.toString("UTF-8");
+		assertEquals(xmlString, s);
+	}
+
 	@Test
 	public void test4() throws IOException, UIMAException {
 		testRoundTrip(getClass().getResourceAsStream("/11g1d.0.xml"));
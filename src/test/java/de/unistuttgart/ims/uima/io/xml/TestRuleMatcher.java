@@ -0,0 +1,58 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.jcas.tcas.Annotation;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.junit.Test;
+
+import de.unistuttgart.ims.uima.io.xml.GenericXmlReader.Rule;
+
+public class TestRuleMatcher {
+
+	String[] selectors = new String[] { "sp", "SP", "sp > speaker", "l, p", "[who]", "[who=#goetz]", "#dlina",
+			"idno[type=URL]", "*", "div:first-child", "text hi", "sp:has(stage)", "[^xml]", "tei|foo, stage",
+			"body > div > div", ":root" };
+
+	@Test
+	public void testSameAsSelect() throws IOException {
+		Document doc = Jsoup.parse(getClass().getResourceAsStream("/11g1d.0.xml"), "UTF-8", "",
+				Parser.xmlParser());
+		Element textRoot = doc.select("TEI > text").first();
+
+		List<Rule<?>> rules = new ArrayList<Rule<?>>();
+		for (String selector : selectors) {
+			rules.add(new Rule<Annotation>(selector, Annotation.class, null, false));
+			rules.add(new Rule<Annotation>(selector, Annotation.class, null, true));
+		}
+
+		List<List<Element>> matches = new RuleMatcher(rules).match(doc, textRoot);
+		for (int i = 0; i < rules.size(); i++) {
+			Rule<?> rule = rules.get(i);
+			List<Element> expected = (rule.isGlobal() ? doc : textRoot).select(rule.getSelector());
+			assertEquals(rule.toString(), expected, matches.get(i));
+		}
+	}
+
+	@Test
+	public void testKey() {
+		assertArrayEquals(new String[] { "tag", "pos" }, RuleMatcher.key("s > POS[pos=det]"));
+		assertArrayEquals(new String[] { "tag", "tei:text" }, RuleMatcher.key("tei|text"));
+		assertArrayEquals(new String[] { "id", "a" }, RuleMatcher.key("div #a.b"));
+		assertArrayEquals(new String[] { "class", "b" }, RuleMatcher.key(".b:first-child"));
+		assertArrayEquals(new String[] { "attribute", "xml:id" }, RuleMatcher.key("[xml:id]"));
+		assertArrayEquals(new String[] { "tag", "b" }, RuleMatcher.key("a:has(> c) b"));
+		assertNull(RuleMatcher.key("*"));
+		assertNull(RuleMatcher.key(":root"));
+		assertEquals(2, RuleMatcher.split("a:not(b, c), d").size());
+	}
+}
@@ -0,0 +1,54 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+
+public class TestSplittingReader {
+
+	@Test
+	public void testRecords() throws IOException {
+		StringBuilder b = new StringBuilder("<?xml version=\"1.0\"?>\n<teiCorpus><teiHeader><title>corpus</title></teiHeader>");
+		for (int i = 0; i < 3; i++)
+			b.append("<TEI><teiHeader><title>doc ").append(i).append("</title></teiHeader><text><s>the dog ")
+					.append(i).append("</s> <s>barks &amp; <!-- x -->bites</s></text></TEI>");
+		b.append("</teiCorpus>");
+
+		GenericXmlReader<DocumentMetaData> gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		gxr.setTextRootSelector("TEI > text");
+		gxr.setPreserveWhitespace(true);
+		gxr.addRule("s", Sentence.class);
+		gxr.addGlobalRule("teiHeader > title", (d, e) -> d.setDocumentTitle(e.text()));
+		SplittingReader<DocumentMetaData> reader = new SplittingReader<DocumentMetaData>(gxr.compile(),
+				"teiCorpus > TEI");
+
+		int i = 0;
+		try (SplittingReader<DocumentMetaData>.Records records = reader
+				.read(IOUtils.toInputStream(b.toString(), "UTF-8"))) {
+			while (records.hasNext()) {
+				JCas jcas = records.next();
+				assertEquals("the dog " + i + " barks & bites", jcas.getDocumentText());
+				assertEquals(2, JCasUtil.select(jcas, Sentence.class).size());
+				assertEquals("doc " + i, JCasUtil.selectSingle(jcas, DocumentMetaData.class).getDocumentTitle());
+				i++;
+			}
+			assertFalse(records.hasNext());
+		}
+		assertEquals(3, i);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSelector() {
+		GenericXmlReader<DocumentMetaData> gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		new SplittingReader<DocumentMetaData>(gxr.compile(), "TEI:first-child");
+	}
+}
@@ -0,0 +1,167 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.UIMAException;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.dkpro.core.api.lexmorph.type.pos.POS;
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Paragraph;
+import de.tudarmstadt.ukp.dkpro.core.api.segmentation.type.Sentence;
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+import de.unistuttgart.ims.uima.io.xml.type.XMLParsingDescription;
+
+public class TestStreamingReader {
+
+	JCas jcas;
+	GenericXmlReader<DocumentMetaData> gxr;
+
+	@Before
+	public void setUp() throws UIMAException {
+		gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		gxr.setStreaming(true);
+	}
+
+	@Test
+	public void testRules() throws UIMAException, IOException {
+		String xmlString = "<text><head><title>The Dog Story</title></head><body><s><pos pos=\"det\">the</pos> <pos pos=\"nn\">dog</pos> <pos pos=\"v\">barks</pos></s> <s><pos>The</pos> <pos>cat</pos> <pos>too</pos></s></body></text>";
+		gxr.setTextRootSelector("text > body");
+		gxr.addGlobalRule("text > head > title", (d, e) -> {
+			d.setDocumentTitle(e.text());
+		});
+		gxr.addRule("s", Sentence.class);
+		gxr.addRule("pos", POS.class, (anno, xmlElement) -> {
+			if (xmlElement.hasAttr("pos"))
+				anno.setPosValue(xmlElement.attr("pos"));
+		});
+
+		jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+
+		assertNotNull(jcas);
+		assertNull(gxr.getDocument());
+		assertEquals("the dog barks The cat too\n", jcas.getDocumentText());
+
+		assertEquals(2, JCasUtil.select(jcas, Sentence.class).size());
+		assertEquals("the dog barks", JCasUtil.selectByIndex(jcas, Sentence.class, 0).getCoveredText());
+		assertEquals(6, JCasUtil.select(jcas, POS.class).size());
+		assertEquals("det", JCasUtil.selectByIndex(jcas, POS.class, 0).getPosValue());
+		assertEquals("nn", JCasUtil.selectByIndex(jcas, POS.class, 1).getPosValue());
+		assertEquals("The Dog Story", DocumentMetaData.get(jcas).getDocumentTitle());
+	}
+
+	@Test
+	public void testSameAsDom() throws UIMAException, IOException {
+		String input = IOUtils.toString(getClass().getResourceAsStream("/11g1d.0.xml"), "UTF-8");
+
+		GenericXmlReader<DocumentMetaData> domReader = new GenericXmlReader<DocumentMetaData>(
+				DocumentMetaData.class);
+		List<GenericXmlReader<DocumentMetaData>> readers = new ArrayList<GenericXmlReader<DocumentMetaData>>();
+		readers.add(gxr);
+		readers.add(domReader);
+		for (GenericXmlReader<DocumentMetaData> r : readers) {
+			r.setTextRootSelector("TEI > text");
+			r.addRule("sp", Sentence.class);
+			r.addGlobalRule("titleStmt > title", (d, e) -> d.setDocumentTitle(e.text()));
+		}
+
+		JCas streamed = gxr.read(IOUtils.toInputStream(input, "UTF-8"));
+		JCas parsed = domReader.read(IOUtils.toInputStream(input, "UTF-8"));
+
+		assertEquals(parsed.getDocumentText(), streamed.getDocumentText());
+		List<XMLElement> expected = new ArrayList<XMLElement>(JCasUtil.select(parsed, XMLElement.class));
+		List<XMLElement> actual = new ArrayList<XMLElement>(JCasUtil.select(streamed, XMLElement.class));
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			XMLElement a = expected.get(i), b = actual.get(i);
+			assertEquals(a.getBegin(), b.getBegin());
+			assertEquals(a.getEnd(), b.getEnd());
+			assertEquals(a.getTag(), b.getTag());
+			assertEquals(a.getId(), b.getId());
+			assertEquals(a.getCls(), b.getCls());
+			assertEquals(a.getAttributes(), b.getAttributes());
+		}
+		List<Sentence> expectedSentences = new ArrayList<Sentence>(JCasUtil.select(parsed, Sentence.class));
+		List<Sentence> actualSentences = new ArrayList<Sentence>(JCasUtil.select(streamed, Sentence.class));
+		assertEquals(expectedSentences.size(), actualSentences.size());
+		for (int i = 0; i < expectedSentences.size(); i++) {
+			assertEquals(expectedSentences.get(i).getBegin(), actualSentences.get(i).getBegin());
+			assertEquals(expectedSentences.get(i).getEnd(), actualSentences.get(i).getEnd());
+		}
+		assertEquals(DocumentMetaData.get(parsed).getDocumentTitle(),
+				DocumentMetaData.get(streamed).getDocumentTitle());
+	}
+
+	@Test
+	public void testDeclarations() throws UIMAException, IOException {
+		String xmlString = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<?xml-stylesheet type=\"text/css\" href=\"../schema/tei.css\"?>\n<text><s>the dog</s></text>";
+
+		jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+
+		XMLParsingDescription pd = JCasUtil.selectSingle(jcas, XMLParsingDescription.class);
+		assertEquals(2, pd.getXmlDeclarations().size());
+		assertEquals("version=\"1.0\" encoding=\"UTF-8\"", pd.getXmlDeclarations(0));
+		assertEquals("UTF-8", pd.getEncoding());
+		assertEquals("the dog", jcas.getDocumentText());
+	}
+
+	@Test
+	public void testUnstreamableRule() throws UIMAException, IOException {
+		String xmlString = "<text><s>the dog</s><s>the cat</s></text>";
+		gxr.addRule("s:first-child", Sentence.class);
+		gxr.addRule("s", POS.class);
+
+		jcas = gxr.read(IOUtils.toInputStream(xmlString, "UTF-8"));
+		assertFalse(JCasUtil.exists(jcas, Sentence.class));
+		assertEquals(2, JCasUtil.select(jcas, POS.class).size());
+
+		assertTrue(StreamingReader.isStreamable("TEI > text [xml:id]"));
+		assertTrue(StreamingReader.isStreamable("div.act, sp#x > l[n~=^1]"));
+		assertTrue(StreamingReader.isStreamable("s:not([rend=bold])"));
+		assertFalse(StreamingReader.isStreamable("a + b"));
+		assertFalse(StreamingReader.isStreamable("a ~ b"));
+		assertFalse(StreamingReader.isStreamable("s:first-child"));
+		assertFalse(StreamingReader.isStreamable("p:contains(x)"));
+		assertFalse(StreamingReader.isStreamable("p:has(s)"));
+		assertFalse(StreamingReader.isStreamable("a, b:not(c + d)"));
+		assertFalse(StreamingReader.isStreamable("a["));
+	}
+
+	@Test
+	public void testTextForCallbacks() throws Exception {
+		String xmlString = "<TEI><title>Dogs</title><text><s>a <w>b</w> c</s><s>d</s><p>e</p></text></TEI>";
+		List<String> texts = new ArrayList<String>();
+		gxr.addGlobalRule("title", (d, e) -> d.setDocumentTitle(e.text()));
+		gxr.addRule("s", Sentence.class, (s, e) -> texts.add(e.text()));
+		gxr.addRule("w", POS.class, (w, e) -> texts.add(e.text()));
+		gxr.addRule("p", Paragraph.class);
+
+		ReaderContext<DocumentMetaData> context = gxr.compile().newContext(JCasFactory.createJCas());
+		context.charset = StandardCharsets.UTF_8;
+		StreamingReader<DocumentMetaData> reader = new StreamingReader<DocumentMetaData>(context);
+		jcas = reader.read(new StringReader(xmlString));
+
+		assertEquals(Arrays.asList("b", "a b c", "d"), texts);
+		assertEquals("Dogs", DocumentMetaData.get(jcas).getDocumentTitle());
+		// the text of the paragraph, which has no callback, is not collected
+		assertEquals(0, reader.textElements);
+		assertEquals("d", reader.text.toString());
+	}
+
+}
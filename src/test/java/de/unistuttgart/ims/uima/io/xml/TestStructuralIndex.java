@@ -0,0 +1,136 @@
+package de.unistuttgart.ims.uima.io.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.uima.fit.factory.JCasFactory;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.tudarmstadt.ukp.dkpro.core.api.metadata.type.DocumentMetaData;
+import de.unistuttgart.ims.uima.io.xml.type.XMLElement;
+
+public class TestStructuralIndex {
+
+	GenericXmlReader<DocumentMetaData> gxr;
+
+	@Before
+	public void setUp() {
+		gxr = new GenericXmlReader<DocumentMetaData>(DocumentMetaData.class);
+		gxr.setPreserveWhitespace(true);
+	}
+
+	@Test
+	public void testTree() throws Exception {
+		ReaderContext<DocumentMetaData> context = gxr.compile().newContext(JCasFactory.createJCas());
+		context.read(IOUtils.toInputStream("<text><sp><l>x <hi>y</hi></l><e/></sp><sp><l>z</l></sp></text>", "UTF-8"));
+		StructuralIndex index = context.getStructuralIndex();
+		assertTrue(index == context.getStructuralIndex());
+		assertTrue(index.isDocumentOrder());
+
+		assertEquals(8, index.size());
+		assertEquals("#root", index.getTag(index.tag(0)));
+		int sp = index.getTagId("sp");
+		int hi = index.enclosing(2);
+		assertEquals("hi", index.getTag(index.tag(hi)));
+		assertEquals("y", index.get(hi).getCoveredText());
+		assertEquals(4, index.depth(hi));
+		assertEquals(index.enclosing(0, sp), index.enclosing(2, sp));
+		assertEquals(index.enclosing(2, sp), index.ancestor(hi, sp));
+		assertEquals(-1, index.ancestor(index.ancestor(hi, sp), sp));
+		assertEquals(-1, index.enclosing(2, index.getTagId("e")));
+		assertEquals(-1, index.getTagId("p"));
+
+		// the empty element is a sibling of l, not its child
+		int e = index.getTagId("e");
+		for (int i = 0; i < index.size(); i++)
+			if (index.tag(i) == e) {
+				assertEquals(index.enclosing(0, sp), index.parent(i));
+				assertEquals(i + 1, index.next(i));
+			}
+		int second = index.enclosing(3, sp);
+		assertEquals("z", index.get(second).getCoveredText());
+		assertTrue(index.isAncestor(index.enclosing(3, index.getTagId("text")), second));
+		assertFalse(index.isAncestor(index.enclosing(0, sp), second));
+		assertEquals(index.size(), index.next(second));
+		assertEquals(-1, index.enclosing(4));
+	}
+
+	@Test
+	public void testInnermost() throws Exception {
+		JCas jcas = gxr.read(getClass().getResourceAsStream("/11g1d.0.xml"));
+		StructuralIndex index = StructuralIndex.create(jcas);
+		List<XMLElement> elements = new ArrayList<XMLElement>(JCasUtil.select(jcas, XMLElement.class));
+		for (int offset = -1; offset <= jcas.getDocumentText().length(); offset += 7) {
+			XMLElement expected = null;
+			for (XMLElement element : elements)
+				if (element.getBegin() <= offset && offset < element.getEnd()
+						&& (expected == null || element.getDepth() > expected.getDepth()))
+					expected = element;
+			int i = index.enclosing(offset);
+			assertEquals(expected, i < 0 ? null : index.get(i));
+		}
+	}
+
+	@Test
+	public void testReaderOption() throws Exception {
+		String xml = "<text><sp><l>x <hi>y</hi></l></sp></text>";
+		gxr.read(IOUtils.toInputStream(xml, "UTF-8"));
+		assertNull(gxr.getStructuralIndex());
+
+		gxr.setStructuralIndex(true);
+		for (boolean streaming : new boolean[] { false, true }) {
+			gxr.setStreaming(streaming);
+			JCas jcas = gxr.read(IOUtils.toInputStream(xml, "UTF-8"));
+			StructuralIndex index = gxr.getStructuralIndex();
+			assertNotNull(index);
+			assertEquals(JCasUtil.select(jcas, XMLElement.class).size(), index.size());
+			assertEquals("y", index.get(index.enclosing(2, index.getTagId("hi"))).getCoveredText());
+		}
+	}
+
+	@Test
+	public void testWithoutOrder() throws Exception {
+		gxr.setXmlElementFeatures(EnumSet.of(XmlElementFeature.TAG));
+		JCas jcas = gxr.read(IOUtils.toInputStream("<text><sp><l>x <hi>y</hi></l></sp><sp><l>z</l></sp></text>", "UTF-8"));
+		StructuralIndex index = StructuralIndex.create(jcas);
+		assertFalse(index.isDocumentOrder());
+		int sp = index.getTagId("sp");
+		assertEquals("x y", index.get(index.enclosing(2, sp)).getCoveredText());
+		assertEquals("z", index.get(index.enclosing(3, sp)).getCoveredText());
+		assertEquals(index.enclosing(3, sp), index.ancestor(index.enclosing(3), sp));
+	}
+
+	@Test
+	public void testEnclosing() throws Exception {
+		JCas jcas = gxr.read(getClass().getResourceAsStream("/11g1d.0.xml"));
+		StructuralIndex index = StructuralIndex.create(jcas);
+		List<XMLElement> elements = new ArrayList<XMLElement>(JCasUtil.select(jcas, XMLElement.class));
+		assertEquals(elements.size(), index.size());
+		for (int offset = 0; offset < jcas.getDocumentText().length(); offset += 101) {
+			for (String tag : new String[] { "sp", "l", "div", "TEI" }) {
+				List<XMLElement> expected = new ArrayList<XMLElement>();
+				for (XMLElement element : elements)
+					if (element.getTag().equals(tag) && element.getBegin() <= offset && offset < element.getEnd())
+						expected.add(element);
+				expected.sort((a, b) -> Integer.compare(b.getDepth(), a.getDepth()));
+
+				List<XMLElement> actual = new ArrayList<XMLElement>();
+				int id = index.getTagId(tag);
+				for (int i = index.enclosing(offset, id); i >= 0; i = index.ancestor(i, id))
+					actual.add(index.get(i));
+				assertEquals(expected, actual);
+			}
+		}
+	}
+}